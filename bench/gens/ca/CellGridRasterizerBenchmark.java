@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package gens.ca;
+
+import general.PixelBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to draw a random grid of cells with four states, cell by cell with
+ * PixelBuffer.fillRect() or fillOval() compared to the CellGridRasterizer.
+ *
+ * @author Moritz Rieger
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellGridRasterizerBenchmark {
+
+    private static final int[] PALETTE = {0xFFFFFFFF, 0xFF000000,
+        0xFF4682B4, 0xFFDC143C};
+
+    @Param({"200"})
+    private int cells;
+
+    @Param({"1", "5", "10"})
+    private int cellSize;
+
+    @Param({"SQUARE", "CIRCLE"})
+    private CellGridRasterizer.Stamp stamp;
+
+    private int[][] states;
+    private PixelBuffer frame;
+    private CellGridRasterizer rasterizer;
+
+    @Setup
+    public void setUp() {
+        states = new int[cells][cells];
+        Random random = new Random(42);
+        for (int[] row : states) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = random.nextInt(PALETTE.length);
+            }
+        }
+        frame = new PixelBuffer(cells * cellSize, cells * cellSize);
+        rasterizer = new CellGridRasterizer(cellSize, stamp, PALETTE,
+                PALETTE[0]);
+    }
+
+    @Benchmark
+    public PixelBuffer perCell() {
+        frame.fill(PALETTE[0]);
+        for (int i = 0; i < states.length; i++) {
+            for (int j = 0; j < states[i].length; j++) {
+                int color = PALETTE[states[i][j]];
+                if (stamp == CellGridRasterizer.Stamp.SQUARE) {
+                    frame.fillRect(j * cellSize, i * cellSize, cellSize,
+                            cellSize, color);
+                } else {
+                    frame.fillOval(j * cellSize, i * cellSize, cellSize,
+                            cellSize, color);
+                }
+            }
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public PixelBuffer rasterizer() {
+        rasterizer.draw(frame, states);
+        return frame;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package gens.ca.cookiemonster;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to calculate one Cookie Monster generation from a random one.
+ *
+ * @author Moritz Rieger
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CookieMonsterBenchmark {
+
+    @Param({"100", "1000"})
+    private int cells;
+
+    @Param({"4", "20"})
+    private int states;
+
+    private CookieMonsterGenModel model;
+    private CookieMonsterGenModel.Config config;
+    private int[][] currentGen;
+    private int[][] nextGen; // reused like the grids of a run
+
+    @Setup
+    public void setUp() {
+        model = new CookieMonsterGenModel();
+        model.setCellSize(1);
+        model.setCells(cells);
+        model.setStates(states);
+        config = model.createConfig();
+        currentGen = model.calcInitGen(config);
+        nextGen = new int[cells][cells];
+    }
+
+    @Benchmark
+    public int[][] calcNextGen() {
+        return model.calcNextGen(config, currentGen, nextGen);
+    }
+
+}
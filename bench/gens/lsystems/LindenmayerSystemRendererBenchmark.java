@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package gens.lsystems;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Zeit für das Zeichnen einer Koch-Kurve auf eine Canvas.
+ *
+ * @author Moritz Rieger
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LindenmayerSystemRendererBenchmark {
+
+    @Param({"3", "5"})
+    private int generation;
+
+    private LindenmayerSystemRenderer renderer;
+
+    @Setup
+    public void setUp() {
+        String word = "F";
+        for (int i = 0; i < generation; i++) {
+            word = word.replace("F", "F+F--F+F");
+        }
+        renderer = new LindenmayerSystemRenderer(500, 500, word, 60, 0);
+    }
+
+    // Jede Messung bekommt eine neue Canvas, da die Zeichenbefehle sonst
+    // immer weiter gesammelt werden
+    @Setup(Level.Invocation)
+    public void newCanvas() {
+        renderer.newCanvas();
+    }
+
+    @Benchmark
+    public void drawCanvas() {
+        renderer.drawCanvas();
+    }
+
+}
@@ -53,6 +53,8 @@ public class App extends Application {
             loader.setLocation(getClass().getResource("/general/AppView.fxml"));
             primaryStage.setScene(new Scene(loader.load()));
             primaryStage.show();
+            // the generator views are loaded while the user looks at the App
+            GenViewCache.getInstance().prewarm();
             
         } catch (IOException e) {
             System.out.println("Loading AppView.fxml failed!");
@@ -60,11 +62,16 @@ public class App extends Application {
     }
     
     /**
-     * Launches the JavaFX Application Thread with command line arguments.
+     * Launches the JavaFX Application Thread with command line arguments, or
+     * runs a single generator without a window if the arguments ask for it
+     * (see HeadlessRunner).
      * 
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        if (HeadlessRunner.isHeadlessRun(args)) {
+            System.exit(HeadlessRunner.run(args));
+        }
         launch(args);
     }
     
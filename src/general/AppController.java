@@ -23,26 +23,23 @@
  */
 package general;
 
-import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.ScrollPane;
-import javafx.scene.image.WritableImage;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
-import javax.imageio.ImageIO;
 
 /**
  * FXML Controller class for AppView.fxml
@@ -58,9 +55,14 @@ public class AppController {
     @FXML
     private Label statusLabel;   
     
-    private Canvas canvas; // the main canvas of the App    
+    private Canvas canvas; // the main canvas of the App (null if the viewport is shown)
+    private PixelBuffer pixelBuffer; // pixels shown in the viewport (can be null)
+    private GenModel pixelBufferModel; // the GenModel the pixelBuffer is of
+    // shows pixel buffers of any size without copying them onto a canvas
+    private final PixelViewport viewport = new PixelViewport();
     private Stage genStage; // a window for a selected generator
     private GenController genController; // the controller associated with the selected generator
+    private String genViewName; // name of the selected generator in the GenRegistry
 
     
     @FXML
@@ -72,130 +74,80 @@ public class AppController {
     
     @FXML
     private void showSimpleGenView() {
-        showSpecializedGenView("Simple Generator",
-                "/gens/basicexample1/SimpleGenView.fxml");
+        showSpecializedGenView("simple");
     }
     
     @FXML
     private void showSimpleAnimationGenView() {
-        showSpecializedGenView("Simple Animation Generator",
-                "/gens/basicexample2/SimpleAnimationGenView.fxml");
+        showSpecializedGenView("simpleanimation");
     }
 
     @FXML
     private void showWolframGenView() {
-        showSpecializedGenView("Wolfram Generator",
-                "/gens/ca/wolfram/WolframGenView.fxml");
+        showSpecializedGenView("wolfram");
     }
     
     @FXML
     private void showGameOfLifeGenView() {
-        showSpecializedGenView("Game of Life Generator",
-                "/gens/ca/gameoflife1/GameOfLifeGenView.fxml");
+        showSpecializedGenView("gameoflife");
     }
     
     @FXML
     private void showWolframEvolvedGenView() {
-        showSpecializedGenView("Wolfram Evolved Generator",
-                "/gens/ca/wolframevolved/WolframEvolvedGenView.fxml");
+        showSpecializedGenView("wolframevolved");
     }
     
     @FXML
     private void showCookieMonsterGenView() {
-        showSpecializedGenView("Cookie Monster Generator",
-                "/gens/ca/cookiemonster/CookieMonsterGenView.fxml");
+        showSpecializedGenView("cookiemonster");
     }
     
     @FXML
     private void showLindenmayerGenView() {
-        showSpecializedGenView("Standard Lindenmayer System",
-                "/gens/lsystems/standard/LindenmayerSystemView.fxml");
+        showSpecializedGenView("lsystem");
     }
     
     @FXML
     private void showProbabilisticLindenmayerGenView() {
-        showSpecializedGenView("Probabilistic Lindenmayer System",
-                "/gens/lsystems/probabilistic/ProbabilisticLindenmayerSystemView.fxml");
+        showSpecializedGenView("plsystem");
     }
     @FXML
     private void showStandardRFTGenView() {
-        showSpecializedGenView("Standard Random Function Tree",
-                "/gens/rft/standard/RandomFunctionTreeView.fxml");
+        showSpecializedGenView("rft");
     } 
     @FXML
     private void showExtendedRFTGenView() {
-        showSpecializedGenView("Extended Random Function Tree Generator",
-                "/gens/rft/extended/RandomFunctionTreeExtendedView.fxml");
+        showSpecializedGenView("rftextended");
         System.out.println(genController.getModel().genName);
     } 
             
     /**
-     * Displays a new view of a specialized Generator.
+     * Displays the view of a specialized Generator. The views come from the
+     * GenViewCache, which loads them in advance and keeps recently used
+     * ones, so a generator that was shown before keeps its parameters.
      * 
-     * @param genName  The name associated with the generator
-     * @param pathToFXMLFile The path to the fxml file of the wanted view
+     * @param name The name of the generator in the GenRegistry
      */    
-    private void showSpecializedGenView(String genName, String pathToFXMLFile){
-        if (genController != null && 
-                genController.getModel().getGenName().equals(genName)){
+    private void showSpecializedGenView(String name){
+        if (genController != null && name.equals(genViewName)){
             // window for specialized Generator exists already -> no creation
             genStage.requestFocus();
         } else {
             try {
                 if (genController != null) {
                     // a window for a different specialized Generator exists
-                    // already -> close it first
+                    // already -> hide it first, it stays in the cache
                     genController.getModel().interruptBackgroundThread();
-                    genStage.close();
+                    genStage.hide();
                 }
-                // create new view
-                FXMLLoader loader = new FXMLLoader();
-                loader.setLocation(App.class.getResource(pathToFXMLFile));
-                Parent content = loader.load();
-                
-                // let the app view listen to the GenState of the newly
-                // created model (to update statusbar and display generated 
-                // image when it is finished)
-                genController = loader.getController();
-                genController.getModel().genStateProperty().
-                        addListener(new ChangeListener<GenState>(){
-                    @Override
-                    public void changed(ObservableValue<? extends 
-                            GenState> observable, GenState oldValue,
-                            GenState newValue) {
-                        // Make sure the following runs always inside JavaFX
-                        // Application Thread (even if started from another
-                        // Thread), as UI changes need to be done in there
-                        Platform.runLater(() -> {
-                            if (newValue != GenState.ITERATION_READY) {
-                                statusLabel.textProperty().setValue(
-                                        newValue.getDescription());
-                            }                           
-                            if ((newValue == GenState.FINISHED_READY ||
-                                    newValue == GenState.ITERATION_READY) &&
-                                    genController != null) {
-                                canvas = genController.getModel().
-                                        getCanvas();
-                                scrollPane.setContent(canvas);
-                                menuItemSaveImage.setDisable(false);
-                            }
-                        });                   
-                    }
-
-                });
-                
+                GenViewCache.View view = GenViewCache.getInstance().get(name);
+                genController = view.controller;
+                genViewName = name;
+                if (view.stage == null) {
+                    view.stage = createGenStage(view);
+                }
+                genStage = view.stage;
                 statusLabel.textProperty().setValue(genController.getModel().getStateDescription());
-                genStage = new Stage();
-                genStage.setTitle(genController.getModel().getGenName());
-                genStage.setOnCloseRequest((WindowEvent e) -> {
-                    genController.getModel().interruptBackgroundThread();
-                    genController = null;
-                    statusLabel.textProperty().setValue(
-                            "No generator selected.");
-                });                 
-                genStage.setScene(new Scene(content));
-                genStage.setResizable(false);
-                genController.setStage(genStage);
                 genStage.show();                
                 
             }  catch (IOException e) {
@@ -204,6 +156,86 @@ public class AppController {
         }
     }
 
+    // Creates the window of a view when it is shown for the first time
+    private Stage createGenStage(GenViewCache.View view) {
+        GenController controller = view.controller;
+        // let the app view listen to the GenState of the newly
+        // created model (to update statusbar and display generated 
+        // image when it is finished)
+        controller.getModel().genStateProperty().
+                addListener(new ChangeListener<GenState>(){
+            @Override
+            public void changed(ObservableValue<? extends 
+                    GenState> observable, GenState oldValue,
+                    GenState newValue) {
+                // Make sure the following runs always inside JavaFX
+                // Application Thread (even if started from another
+                // Thread), as UI changes need to be done in there.
+                // States usually arrive there already (see
+                // GenStatePublisher), then the frame is displayed
+                // before the generator thread continues.
+                Runnable update = () -> {
+                    // cached views that are not shown keep their listener
+                    if (genController != controller) {
+                        return;
+                    }
+                    if (newValue != GenState.ITERATION_READY) {
+                        statusLabel.textProperty().setValue(
+                                newValue.getDescription());
+                    }                           
+                    if (newValue == GenState.FINISHED_READY ||
+                            newValue == GenState.ITERATION_READY) {
+                        pixelBufferModel = controller.getModel();
+                        pixelBuffer = pixelBufferModel.swapDisplayedFrame();
+                        if (pixelBuffer != null) {
+                            // only the visible part gets uploaded, frames
+                            // in native cell mode are enlarged on the way
+                            viewport.setImage(pixelBuffer,
+                                    pixelBufferModel.getDisplayScale());
+                            canvas = null;
+                            showInScrollPane(viewport, true);
+                        } else {
+                            canvas = controller.getModel().
+                                    getCanvas();
+                            showInScrollPane(canvas, false);
+                        }
+                        menuItemSaveImage.setDisable(false);
+                    }
+                };
+                if (Platform.isFxApplicationThread()) {
+                    update.run();
+                } else {
+                    Platform.runLater(update);
+                }
+            }
+
+        });
+        
+        Stage stage = new Stage();
+        stage.setTitle(controller.getModel().getGenName());
+        stage.setOnCloseRequest((WindowEvent e) -> {
+            controller.getModel().interruptBackgroundThread();
+            genController = null;
+            genViewName = null;
+            statusLabel.textProperty().setValue(
+                    "No generator selected.");
+        });                 
+        stage.setScene(new Scene(view.content));
+        stage.setResizable(false);
+        controller.setStage(stage);
+        return stage;
+    }
+
+    // The viewport scrolls by itself and takes the whole space, a canvas is
+    // scrolled by the ScrollPane
+    private void showInScrollPane(Node content, boolean fit) {
+        scrollPane.setFitToWidth(fit);
+        scrollPane.setFitToHeight(fit);
+        if (scrollPane.getContent() != content) {
+            scrollPane.setContent(content);
+        }
+    }
+
     @FXML
     private void handleExit() {
         Platform.exit(); // close all windows of application gracefully
@@ -226,19 +258,38 @@ public class AppController {
         fileChooser.getExtensionFilters().add(extFilter);
 
         // show Save Image dialog and process user input
-        File file = fileChooser.showSaveDialog(canvas.getScene().getWindow());
+        File file = fileChooser.showSaveDialog(scrollPane.getScene().getWindow());
         if (file != null) {
-            try {
-                WritableImage writableImage = canvas.snapshot(null, null);
-                RenderedImage renderedImage = 
-                        SwingFXUtils.fromFXImage(writableImage, null);
-                ImageIO.write(renderedImage, "png", file);
-                
-                statusLabel.textProperty().setValue("Saved!");
-                
-            } catch (IOException ex) {
-                System.out.println(ex.getMessage());
-            }            
+            Supplier<PixelBuffer> image;
+            if (pixelBuffer != null) {
+                // pixels are available already, no snapshot needed. Native
+                // cell frames are saved with the full cell size, which the
+                // encoder thread draws.
+                image = pixelBufferModel.getFullSizeImage();
+            } else {
+                PixelBuffer snapshot = PixelBuffer.fromImage(
+                        canvas.snapshot(null, null));
+                image = () -> snapshot;
+            }
+            // the png is compressed on an encoder thread, the App stays
+            // responsive meanwhile. The JavaFX Application Thread must not
+            // wait for a place in the queue.
+            CompletableFuture<File> written = ImageOutputService.getInstance()
+                    .tryWrite(image, file);
+            if (written == null) {
+                statusLabel.textProperty().setValue(
+                        "Too many images are being saved, please try again.");
+                return;
+            }
+            statusLabel.textProperty().setValue("Saving...");
+            written.whenComplete((result, ex) -> Platform.runLater(() -> {
+                if (ex != null) {
+                    System.out.println(ex.getMessage());
+                    statusLabel.textProperty().setValue("Saving failed!");
+                } else {
+                    statusLabel.textProperty().setValue("Saved!");
+                }
+            }));
         } // else file save was cancelled by user
     }    
 }
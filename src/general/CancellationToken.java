@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tells a running generate() that it shall stop. Unlike the interrupt flag
+ * of the thread it cannot get lost in a catch block and it is cheap enough
+ * to be asked in the inner loops, e.g. once per row of an image, so that a
+ * cancelled run stops within a few milliseconds. GenModels get the token of
+ * their current run with getCancellationToken().
+ *
+ * @author Moritz Rieger
+ */
+public class CancellationToken {
+
+    private final CancellationToken parent; // can be null
+    private volatile boolean cancelled;
+    private volatile long cancelTime; // System.nanoTime() of cancel()
+
+    public CancellationToken() {
+        this(null);
+    }
+
+    private CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Creates a token that is cancelled together with this one, but can also
+     * be cancelled on its own without affecting this one, e.g. for the jobs
+     * a run hands over to the RenderFarm.
+     *
+     * @return A new token that depends on this one
+     */
+    public CancellationToken createChild() {
+        return new CancellationToken(this);
+    }
+
+    /**
+     * Asks the run to stop, repeated calls have no effect.
+     */
+    public void cancel() {
+        if (!cancelled) {
+            cancelTime = System.nanoTime();
+            cancelled = true;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    /**
+     * For loops that are nested too deep to simply return.
+     *
+     * @throws CancellationException If the run was cancelled
+     */
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * @return Time since cancel() in ns, or 0 if the run was not cancelled
+     */
+    public long getNanosSinceCancel() {
+        if (cancelled) {
+            return System.nanoTime() - cancelTime;
+        }
+        return parent != null ? parent.getNanosSinceCancel() : 0;
+    }
+
+}
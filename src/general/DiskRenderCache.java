@@ -0,0 +1,345 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Keeps finished images on disk, so that they survive a restart of the App
+ * and can be shared between processes on the same machine. An image is
+ * stored in a file named after the SHA-256 hash of the generator class, its
+ * parameter fingerprint and the version of the code, so a changed generator
+ * never gets an image of its older version. Files are written to a temporary
+ * file first and then moved into place, so readers never see half an image.
+ * When the files need more than the size limit, the least recently used
+ * ones are deleted.
+ *
+ * The directory can be set with the system property "propra.diskcache.dir"
+ * (default: .propra/cache in the home directory) and the size limit in
+ * bytes with "propra.diskcache.bytes" (default: 512 MB, 0 disables the
+ * cache).
+ *
+ * @author Moritz Rieger
+ */
+public class DiskRenderCache {
+
+    public static final String DIR_PROPERTY = "propra.diskcache.dir";
+    public static final String BYTES_PROPERTY = "propra.diskcache.bytes";
+
+    private static final int MAGIC = 0x50524331; // "PRC1", the file format
+    private static final int HEADER_BYTES = 12; // magic, width, height
+    private static final String SUFFIX = ".px";
+
+    private static DiskRenderCache instance;
+
+    private final Path directory;
+    private final long maxBytes;
+    // by the location of the code source
+    private final Map<String, String> codeVersions = new HashMap<>();
+
+    /**
+     * Creates a cache.
+     *
+     * @param directory Directory of the image files, created if needed
+     * @param maxBytes Maximum size of all image files
+     */
+    public DiskRenderCache(Path directory, long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The size limit of a DiskRenderCache must not be negative.");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cache shared by all GenModels, it is created with the
+     * settings from the system properties on first use.
+     *
+     * @return The shared DiskRenderCache
+     */
+    public static synchronized DiskRenderCache getInstance() {
+        if (instance == null) {
+            Path directory = Paths.get(System.getProperty(DIR_PROPERTY,
+                    System.getProperty("user.home") + File.separator
+                    + ".propra" + File.separator + "cache"));
+            instance = new DiskRenderCache(directory,
+                    Long.getLong(BYTES_PROPERTY, 512L * 1024 * 1024));
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Loads a cached image. The file is mapped into memory instead of being
+     * read through a stream.
+     *
+     * @param modelClass The class of the GenModel
+     * @param fingerprint The parameter fingerprint of the GenModel
+     * @return The image or null if it is not cached (or cannot be read)
+     */
+    public PixelBuffer get(Class<? extends GenModel> modelClass,
+            String fingerprint) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Path file = directory.resolve(hash(modelClass, fingerprint) + SUFFIX);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC) {
+                return null;
+            }
+            int width = data.getInt();
+            int height = data.getInt();
+            IntBuffer pixels = data.asIntBuffer();
+            if (pixels.remaining() != width * height) {
+                return null;
+            }
+            PixelBuffer image = new PixelBuffer(width, height);
+            pixels.get(image.getPixels());
+            // the modification time tells the eviction what was used last
+            Files.setLastModifiedTime(file,
+                    FileTime.fromMillis(System.currentTimeMillis()));
+            return image;
+        } catch (IOException | IllegalArgumentException ex) {
+            return null; // not cached, deleted meanwhile or broken
+        }
+    }
+
+    /**
+     * Stores an image and deletes the least recently used images if the size
+     * limit is exceeded.
+     *
+     * @param modelClass The class of the GenModel
+     * @param fingerprint The parameter fingerprint of the GenModel
+     * @param image The finished image
+     */
+    public void put(Class<? extends GenModel> modelClass, String fingerprint,
+            PixelBuffer image) {
+        long bytes = HEADER_BYTES + 4L * image.getWidth() * image.getHeight();
+        if (!isEnabled() || bytes > maxBytes) {
+            return;
+        }
+        String name = hash(modelClass, fingerprint);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(directory);
+            tempFile = Files.createTempFile(directory, name, ".tmp");
+            write(image, tempFile);
+            Path file = directory.resolve(name + SUFFIX);
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempFile = null;
+            evict();
+        } catch (IOException ex) {
+            System.out.println("Cannot cache image: " + ex.getMessage());
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ex) {
+                    // nothing left to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores an image like put(), but on a thread of the ImageOutputService,
+     * so that the generator does not wait for the disk. If the queue of the
+     * ImageOutputService is full, the image is not stored.
+     *
+     * @param modelClass The class of the GenModel
+     * @param fingerprint The parameter fingerprint of the GenModel
+     * @param image The finished image, it must not be changed afterwards
+     */
+    public void putInBackground(Class<? extends GenModel> modelClass,
+            String fingerprint, PixelBuffer image) {
+        if (isEnabled()) {
+            // a full queue only costs a later cache hit
+            ImageOutputService.getInstance().tryExecute(
+                    () -> put(modelClass, fingerprint, image));
+        }
+    }
+
+    private static void write(PixelBuffer image, Path file)
+            throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(image.getWidth());
+            header.writeInt(image.getHeight());
+            header.flush();
+            // the pixels are written in blocks of rows
+            int[] pixels = image.getPixels();
+            ByteBuffer block = ByteBuffer.allocate(1 << 16);
+            IntBuffer blockInts = block.asIntBuffer();
+            for (int i = 0; i < pixels.length; i += blockInts.capacity()) {
+                int n = Math.min(blockInts.capacity(), pixels.length - i);
+                blockInts.clear();
+                blockInts.put(pixels, i, n);
+                out.write(block.array(), 0, n * 4);
+            }
+        }
+    }
+
+    // Deletes the least recently used files until the size limit is kept.
+    // Other processes may delete files at the same time, so missing files
+    // are skipped.
+    private synchronized void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        Map<Path, Long> lastUsed = new HashMap<>();
+        long totalBytes = 0;
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                try {
+                    long size = Files.size(file);
+                    sizes.put(file, size);
+                    lastUsed.put(file,
+                            Files.getLastModifiedTime(file).toMillis());
+                    files.add(file);
+                    totalBytes += size;
+                } catch (IOException ex) {
+                    // deleted meanwhile
+                }
+            }
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        files.sort((a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+        for (Path file : files) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (Files.deleteIfExists(file)) {
+                totalBytes -= sizes.get(file);
+            }
+        }
+    }
+
+    private String hash(Class<?> modelClass, String fingerprint) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String key = modelClass.getName() + "{" + fingerprint + "}"
+                    + codeVersion(modelClass);
+            return toHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    // Identifies the code that rendered an image: a built App is identified
+    // by size and date of its jar, otherwise (e.g. when started from the
+    // IDE) by all class files of its directory, as a generator also depends
+    // on helpers like the FunctionFactory or the CellGridRasterizer.
+    private synchronized String codeVersion(Class<?> modelClass) {
+        CodeSource source = modelClass.getProtectionDomain().getCodeSource();
+        String location = source != null && source.getLocation() != null
+                ? source.getLocation().toString() : modelClass.getName();
+        String version = codeVersions.get(location);
+        if (version != null) {
+            return version;
+        }
+        try {
+            File codeSource = source != null
+                    ? new File(source.getLocation().toURI()) : null;
+            if (codeSource != null && codeSource.isFile()) {
+                version = codeSource.length() + "@" + codeSource.lastModified();
+            } else if (codeSource != null && codeSource.isDirectory()) {
+                version = hashClassFiles(codeSource.toPath());
+            } else {
+                version = "unknown";
+            }
+        } catch (IOException | URISyntaxException | NoSuchAlgorithmException
+                | IllegalArgumentException ex) {
+            version = "unknown";
+        }
+        codeVersions.put(location, version);
+        return version;
+    }
+
+    // Hashes names and contents of all class files below the directory, in
+    // a fixed order
+    private static String hashClassFiles(Path root)
+            throws IOException, NoSuchAlgorithmException {
+        List<Path> classFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(file -> file.toString().endsWith(".class"))
+                    .forEach(classFiles::add);
+        }
+        Collections.sort(classFiles);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (Path file : classFiles) {
+            digest.update(root.relativize(file).toString()
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file));
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+/**
+ * Collects how long a generator thread had to wait for a frame hand-off to
+ * the JavaFX Application Thread (i.e. until an iteration was displayed or a
+ * canvas was saved). All values are in nanoseconds. The statistics are
+ * written by the generator thread and may be read from any thread.
+ *
+ * @author Moritz Rieger
+ */
+public class FrameLatencyStats {
+
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long lastNanos;
+
+    /**
+     * Adds the latency of one hand-off.
+     *
+     * @param nanos Time the generator thread waited in ns
+     */
+    public synchronized void record(long nanos) {
+        count++;
+        totalNanos += nanos;
+        lastNanos = nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        lastNanos = 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getLastNanos() {
+        return lastNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public synchronized long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d frames, mean %.3f ms, max %.3f ms, last %.3f ms",
+                count, getMeanNanos() / 1e6, maxNanos / 1e6, lastNanos / 1e6);
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A small pool of reusable PixelBuffers for animated GenModels, so that a new
+ * frame does not have to be allocated for every generation. A frame is taken
+ * with acquire(), drawn on, displayed, and given back with release() as soon
+ * as it is not displayed anymore. As one frame is displayed while the next
+ * one is drawn, at least two frames are needed.
+ *
+ * All frames of a pool have the same size. If a frame of another size is
+ * requested, the pool forgets its old frames and starts over.
+ *
+ * @author Moritz Rieger
+ */
+public class FramePool {
+
+    private final int maxFrames;
+    private final Deque<PixelBuffer> freeFrames = new ArrayDeque<>();
+    // all frames of the current size that belong to this pool
+    private final Set<PixelBuffer> ownedFrames =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+    private int width;
+    private int height;
+    private long allocatedBytes; // total, for statistics
+
+    /**
+     * Creates an empty pool, frames are allocated on demand.
+     *
+     * @param maxFrames Maximum number of frames that can be in use at the
+     * same time (at least 2)
+     */
+    public FramePool(int maxFrames) {
+        if (maxFrames < 2) {
+            throw new IllegalArgumentException("A FramePool needs at least two frames for double buffering.");
+        }
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * Takes a frame from the pool. The frame still contains what was drawn
+     * on it before. If all frames are in use, the calling thread waits until
+     * one is released.
+     *
+     * @param width Width of the frame in px
+     * @param height Height of the frame in px
+     * @return A frame of the given size
+     * @throws InterruptedException If the thread got interrupted while
+     * waiting for a free frame
+     */
+    public synchronized PixelBuffer acquire(int width, int height)
+            throws InterruptedException {
+        if (width != this.width || height != this.height) {
+            // frames of the old size are not reused anymore
+            freeFrames.clear();
+            ownedFrames.clear();
+            this.width = width;
+            this.height = height;
+        }
+        while (freeFrames.isEmpty() && ownedFrames.size() >= maxFrames) {
+            wait();
+        }
+        if (!freeFrames.isEmpty()) {
+            return freeFrames.pop();
+        }
+        PixelBuffer frame = new PixelBuffer(width, height);
+        ownedFrames.add(frame);
+        allocatedBytes += 4L * width * height;
+        return frame;
+    }
+
+    /**
+     * Gives a frame back to the pool. Frames that do not belong to the pool
+     * (anymore) are ignored.
+     *
+     * @param frame The frame that is not used anymore (can be null)
+     */
+    public synchronized void release(PixelBuffer frame) {
+        if (frame != null && ownedFrames.contains(frame)
+                && !freeFrames.contains(frame)) {
+            freeFrames.push(frame);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Checks whether a frame belongs to the pool, i.e. whether it will be
+     * drawn on again after it was released.
+     *
+     * @param frame A frame
+     * @return True if the frame is one of the frames of the pool
+     */
+    public synchronized boolean owns(PixelBuffer frame) {
+        return ownedFrames.contains(frame);
+    }
+
+    /**
+     * Number of bytes that were allocated for frames since the pool was
+     * created.
+     *
+     * @return Allocated bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the frames of an animated GenModel at a fixed rate. Every frame has
+ * a deadline of start + n * period, so time lost while drawing or waiting
+ * for the display does not add up as it does with sleeping for the step
+ * minus the drawing time. If frames get late, they can optionally be
+ * skipped to catch up with the cadence again; otherwise the cadence starts
+ * anew when it is behind by more than a period, instead of showing the
+ * missed frames in a burst.
+ *
+ * Usage in the frame stage of an animated GenModel:
+ *
+ * if (!scheduler.beginFrame()) { return; } // skipped, too late
+ * ... draw the frame ...
+ * scheduler.awaitDeadline();
+ * waitForCanvasIterationDisplayedInApp();
+ *
+ * How far the frames missed their deadlines (the jitter) is measured. A
+ * scheduler is used by a single thread.
+ *
+ * @author Moritz Rieger
+ */
+public class FrameScheduler {
+
+    private final long periodNanos;
+    private final boolean dropLateFrames;
+    private final GenModelMetrics metrics; // can be null
+    private final FrameLatencyStats jitter = new FrameLatencyStats();
+    private long nextDeadline; // of the next frame, 0 before the first one
+    private long frames;
+    private long skippedFrames;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param periodMillis Time between two frames in ms, 0 for as fast as
+     * possible
+     * @param dropLateFrames True to skip frames that are already overdue
+     */
+    public FrameScheduler(long periodMillis, boolean dropLateFrames) {
+        this(periodMillis, dropLateFrames, null);
+    }
+
+    FrameScheduler(long periodMillis, boolean dropLateFrames,
+            GenModelMetrics metrics) {
+        if (periodMillis < 0) {
+            throw new IllegalArgumentException("The period cannot be negative.");
+        }
+        this.periodNanos = periodMillis * 1000000;
+        this.dropLateFrames = dropLateFrames;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Decides whether the next frame is drawn at all. A frame whose deadline
+     * has passed before it is drawn cannot be shown in time, so it is
+     * skipped if late frames shall be dropped.
+     *
+     * @return True if the frame shall be drawn and shown, false to skip it
+     */
+    public boolean beginFrame() {
+        if (periodNanos == 0 || nextDeadline == 0 || !dropLateFrames
+                || System.nanoTime() <= nextDeadline) {
+            return true;
+        }
+        nextDeadline += periodNanos;
+        skippedFrames++;
+        if (metrics != null) {
+            metrics.recordSkippedFrame();
+        }
+        return false;
+    }
+
+    /**
+     * Waits until the deadline of the current frame. The first frame sets
+     * the start of the cadence and is not delayed.
+     *
+     * @throws InterruptedException If the thread was interrupted while
+     * waiting
+     */
+    public void awaitDeadline() throws InterruptedException {
+        frames++;
+        if (periodNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextDeadline == 0) {
+            nextDeadline = now + periodNanos;
+            return;
+        }
+        long remaining;
+        // parkNanos() may return early, so the deadline is checked again
+        while ((remaining = nextDeadline - now) > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            now = System.nanoTime();
+        }
+        long lateness = now - nextDeadline;
+        jitter.record(lateness);
+        if (metrics != null) {
+            metrics.recordJitter(lateness);
+        }
+        if (!dropLateFrames && lateness > periodNanos) {
+            nextDeadline = now; // too far behind to catch up
+        }
+        nextDeadline += periodNanos;
+    }
+
+    /**
+     * Starts the cadence anew with the next frame, e.g. after the GenModel
+     * was paused, so that the frames are neither late nor skipped.
+     */
+    public void restart() {
+        nextDeadline = 0;
+    }
+
+    /**
+     * @return How late the frames were shown compared to their deadlines
+     */
+    public FrameLatencyStats getJitter() {
+        return jitter;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+}
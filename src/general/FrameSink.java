@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.io.IOException;
+
+/**
+ * Receives every iteration of an animated GenModel as soon as it is drawn,
+ * e.g. to write it to a file. Set on a GenModel with setFrameSink().
+ *
+ * @author Moritz Rieger
+ */
+public interface FrameSink {
+
+    /**
+     * Processes a frame. The frame may be reused by the GenModel after this
+     * method returns, so it must not be kept.
+     *
+     * @param frame The iteration that was just drawn
+     * @param index Number of the iteration, starting with 0
+     * @throws IOException If the frame could not be written
+     */
+    void writeFrame(PixelBuffer frame, int index) throws IOException;
+
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+/**
+ * The parameters of one run of GenModel.generate(), frozen when the run
+ * starts. A run only reads its config, so the setters of the GenModel can
+ * be used while it is generating (they affect the next run) and several
+ * runs never see each other's parameters. Subclasses hold their values in
+ * final fields and describe them in a canonical text, which makes configs
+ * comparable and usable as keys of caches.
+ *
+ * @author Moritz Rieger
+ */
+public abstract class GenConfig {
+
+    private String description; // computed once, the fields never change
+
+    /**
+     * All parameters of the config in a canonical order, e.g.
+     * "rule=30,cells=1001".
+     *
+     * @return Description of the parameters
+     */
+    protected abstract String describe();
+
+    /**
+     * Key of the image of a run in the RenderCache, see
+     * GenModel.getParameterFingerprint(). By default the description of all
+     * parameters.
+     *
+     * @return The fingerprint or null if the image cannot be cached, e.g.
+     * for random initial generations
+     */
+    public String getFingerprint() {
+        return getDescription();
+    }
+
+    private String getDescription() {
+        if (description == null) {
+            description = describe();
+        }
+        return description;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass()
+                && ((GenConfig) obj).getDescription().equals(getDescription());
+    }
+
+    @Override
+    public int hashCode() {
+        return getDescription().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + getDescription() + "}";
+    }
+
+}
@@ -26,6 +26,7 @@ package general;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.stage.Stage;
@@ -50,6 +51,21 @@ public abstract class GenController {
      */     
     @FXML private Button buttonGenerate;
 
+    /**
+     * Views of animated generators can have a Button with fx:id
+     * "buttonPause" and onAction "#handlePause" (null otherwise).
+     * 
+     */
+    @FXML private Button buttonPause;
+
+    /**
+     * Views of cellular automata can have a CheckBox with fx:id
+     * "checkBoxNativeCells" and onAction "#handleNativeCells" (null
+     * otherwise).
+     * 
+     */
+    @FXML private CheckBox checkBoxNativeCells;
+
     /**
      * This automatically called method makes sure that when the generateButton
      * has the focus and Enter is pressed the same thing happens as if the user
@@ -62,6 +78,13 @@ public abstract class GenController {
                 handleGenerate();
             }            
         });        
+        if (buttonPause != null) {
+            buttonPause.addEventHandler(KeyEvent.KEY_PRESSED, (KeyEvent ke) -> {
+                if (ke.getCode() == KeyCode.ENTER) {
+                    handlePause();
+                }
+            });
+        }
     }    
     
      /**
@@ -91,12 +114,44 @@ public abstract class GenController {
     public void handleGenerate(){
         getModel().interruptBackgroundThread();
         getModel().generateInNewThread();
+        updatePauseButton();
     };
     
     // Handles activation of "Stop" button, so that parameters can be modified
     // before the generator may be started again
     public void handleStop() {
         getModel().interruptBackgroundThread();
+        updatePauseButton();
+    }
+
+    /**
+     * Handles a press on the buttonPause: a running generator is paused
+     * and keeps its state, a paused one continues where it stopped.
+     * 
+     */
+    public void handlePause() {
+        GenModel model = getModel();
+        if (model.isPaused()) {
+            model.resume();
+        } else if (model.isBackgroundThreadAlive()) {
+            model.pause();
+        }
+        updatePauseButton();
+    }
+
+    /**
+     * Handles a click on the checkBoxNativeCells: the next run draws every
+     * cell as a single pixel, which the App enlarges to the cell size.
+     * 
+     */
+    public void handleNativeCells() {
+        getModel().setNativeCells(checkBoxNativeCells.isSelected());
+    }
+
+    private void updatePauseButton() {
+        if (buttonPause != null) {
+            buttonPause.setText(getModel().isPaused() ? "Resume" : "Pause");
+        }
     }
   
     /**
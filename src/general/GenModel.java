@@ -24,27 +24,33 @@
 package general;
 
 import javafx.scene.canvas.Canvas;
-import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
 import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.LongProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.Property;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.concurrent.Task;
 import javafx.concurrent.WorkerStateEvent;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.event.EventHandler;
 import javafx.scene.SnapshotParameters;
-import javafx.scene.image.WritableImage;
-import javax.imageio.ImageIO;
 
 /**
  * This is an abstract GenModel which all specialized
  GenModel (for example SimpleGenModel) extend. It 
  defines the things all subtypes of GenModel have in common, for example
- a canvas to draw on, a GenState property, the ability to save an image
- and a generate() method to actually generate the desired image onto the
- canvas.
+ a canvas or a pixel buffer to draw on, a GenState property, the ability to
+ save an image and a generate() method to actually generate the desired
+ image onto the canvas or pixel buffer.
  *
  * @author Christoph Baumhardt
  */
@@ -52,36 +58,113 @@ public abstract class GenModel {
 
     protected String genName; 
     protected Canvas canvas; // canvas for the GenModel to draw on
-    protected Thread backgroundThread; // to execute generate()
+    // alternative to canvas which does not need the JavaFX toolkit, if it is
+    // set it is displayed and saved instead of canvas
+    protected volatile PixelBuffer pixelBuffer;
+    private Canvas pixelBufferCanvas; // reused to display the pixelBuffer
+    // reusable frames for animated GenModels, see acquireFrame()
+    private final FramePool framePool = new FramePool(2);
+    private PixelBuffer displayedFrame; // frame AppController shows right now
+    // display scale and full size source of the frame of the last
+    // acquireFrame() and of the displayed frame (all guarded by this)
+    private PixelBuffer drawnFrame;
+    private int drawnScale = 1;
+    private FullSizeSource drawnSource;
+    private int displayedScale = 1;
+    private FullSizeSource displayedSource;
+    // without the App (e.g. on the command line) nothing is displayed
+    private volatile boolean headless;
+    private volatile boolean dropLateFrames; // see FrameScheduler
+    private volatile GenConfig config; // parameters of the last run
+    private volatile boolean nativeCells; // draw cells at 1 px
+    private volatile int displayScale = 1; // of the frames of the run
+    private volatile Long randomSeed; // null for a new seed on every run
+    private volatile Long usedRandomSeed; // of the last startRandomSource()
+    private volatile FrameSink frameSink; // gets every iteration (can be null)
+    private int frameIndex; // number of the next iteration for frameSink
+    // the run of generate() that was submitted last
+    private GeneratorExecutor.GeneratorRun backgroundRun;
+    // a paused run waits in awaitResumed() with all its state kept
+    private final Object pauseLock = new Object();
+    private volatile boolean paused; // changed while holding pauseLock
+    private boolean pauseAnnounced; // GenState.PAUSED was set for this pause
+    private volatile int resumeCount; // pauses that have ended
+    private FrameScheduler frameScheduler; // of the current run, can be null
+    // asked by generate() whether its run was cancelled
+    private volatile CancellationToken cancellationToken =
+            new CancellationToken();
     // use a property instead of GenState object for easy change monitoring
     private final ObjectProperty<GenState> genState;
-    volatile boolean canvasIterationDisplayedInApp;
+    private final GenStatePublisher genStatePublisher;
     //BUGFIX from Christoph Baumhardt see https://moodle2wrm.fernuni-hagen.de/mod/forum/discuss.php?d=10268
     protected String savePath = System.getProperty("user.home") + File.separator;
-    private boolean waitForCanvasSavedToFile; // thread helper variable
+    // how long the generator thread waits for the JavaFX Application Thread
+    private final FrameLatencyStats displayLatency = new FrameLatencyStats();
+    private final FrameLatencyStats saveLatency = new FrameLatencyStats();
+    private final GenModelMetrics metrics =
+            new GenModelMetrics(this, displayLatency);
 
     public GenModel() {// constructor will be automatically called from subclass
         genName = getGenName();
         genState = new SimpleObjectProperty<>(this, "generatorState",
                 GenState.READY);
+        genStatePublisher = new GenStatePublisher(genState);
     }
     
     abstract public String getGenName();
+
+    /**
+     * The short name this generator is known by in the GenRegistry, e.g. on
+     * the command line. By default the class name without "GenModel" or
+     * "Model" in lower case, e.g. "gameoflife" for GameOfLifeGenModel.
+     *
+     * @return Short name of the generator
+     */
+    public String getRegistryName() {
+        String name = getClass().getSimpleName();
+        for (String suffix : new String[]{"GenModel", "Model"}) {
+            if (name.endsWith(suffix)) {
+                name = name.substring(0, name.length() - suffix.length());
+                break;
+            }
+        }
+        return name.toLowerCase();
+    }
        
     public abstract void generate(); // method to affect the GenModel canvas
     
 
     /**
-     * Define and use a new Thread for the potentially time-consuming generate()
-     * method, so that the Java FX Application Thread does not get blocked
-     * (which would result in unresponsiveness in the GUI).
+     * Submit the potentially time-consuming generate() method to the shared
+     * GeneratorExecutor, so that the Java FX Application Thread does not get
+     * blocked (which would result in unresponsiveness in the GUI). A run that
+     * is still in progress gets cancelled first, the new run starts only
+     * after it has stopped, so that two runs never draw at the same time.
+     * Nothing waits for that here.
      */
     public void generateInNewThread() {
+        resume(); // a new run is never paused
+        CancellationToken token = new CancellationToken();
         Task task = new Task<Void>() {
             @Override
             protected Void call() throws Exception {
-                generate();
-                genStateProperty().setValue(GenState.FINISHED_READY);
+                // set only now, the previous run must keep seeing its own
+                // cancelled token until it has stopped
+                cancellationToken = token;
+                metrics.reset();
+                saveLatency.reset();
+                long startTime = System.nanoTime();
+                try {
+                    generate();
+                } catch (CancellationException ex) {
+                    // thrown by CancellationToken.throwIfCancelled()
+                }
+                if (token.isCancelled()) {
+                    metrics.recordStopLatency(token.getNanosSinceCancel());
+                } else {
+                    metrics.recordRun(System.nanoTime() - startTime);
+                }
+                setGenState(GenState.FINISHED_READY);
                 return null;
             }
         };
@@ -93,8 +176,184 @@ public abstract class GenModel {
                 throwable.printStackTrace();
             }
         });        
-        backgroundThread = new Thread(task);
-        backgroundThread.start();       
+        metrics.register();
+        backgroundRun = GeneratorExecutor.getInstance().submitAfter(
+                backgroundRun, task, token);
+    }
+
+    /**
+     * The token of the current run, generate() should ask it in its inner
+     * loops (e.g. once per row) and return as soon as it is cancelled.
+     * Outside of generateInNewThread() it is never cancelled.
+     *
+     * @return The token of the current run
+     */
+    protected CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    // For GenModels that are not run by generateInNewThread(), e.g. the
+    // jobs of the RenderFarm
+    void setCancellationToken(CancellationToken token) {
+        cancellationToken = token;
+    }
+
+    /**
+     * Number of generations the compute stage of an animated GenModel may be
+     * ahead of the frame that is rendered.
+     */
+    protected static final int PIPELINE_CAPACITY = 2;
+
+    /**
+     * Can be used in generate() of an animated GenModel to calculate the next
+     * generation on a compute thread while the current one is drawn and
+     * displayed (see GenerationPipeline).
+     *
+     * @param <S> Type of the state of a single generation
+     * @param numGens Number of generations
+     * @param computeStage Calculates a generation, runs on the compute thread
+     * @param frameStage Draws and displays a generation, runs on the thread
+     * of generate()
+     * @throws InterruptedException If generate() was interrupted
+     */
+    protected <S> void generatePipelined(int numGens,
+            GenerationPipeline.ComputeStage<S> computeStage,
+            GenerationPipeline.FrameStage<S> frameStage)
+            throws InterruptedException {
+        // both stages are measured for the metrics, the memory allocated by
+        // the compute thread travels with the generation to its frame
+        CancellationToken token = cancellationToken;
+        FrameScheduler scheduler = frameScheduler;
+        int[] seenResumes = {resumeCount};
+        new GenerationPipeline<MeasuredGeneration<S>>(PIPELINE_CAPACITY).run(
+                numGens, k -> {
+            if (token.isCancelled()) {
+                throw new InterruptedException();
+            }
+            // both stages rest while paused, the compute stage at the
+            // latest when the ring buffer is full
+            awaitResumed();
+            long startBytes = GenModelMetrics.currentThreadAllocatedBytes();
+            long startTime = System.nanoTime();
+            S state = computeStage.compute(k);
+            metrics.recordCompute(System.nanoTime() - startTime);
+            return new MeasuredGeneration<>(state,
+                    GenModelMetrics.currentThreadAllocatedBytes() - startBytes);
+        }, (generation, k) -> {
+            if (token.isCancelled()) {
+                throw new InterruptedException();
+            }
+            awaitResumed();
+            // after a pause the frame cadence starts anew, so no frames are
+            // dropped for the paused time; only this stage uses the
+            // scheduler, it may also have waited for the compute stage
+            int resumes = resumeCount;
+            if (resumes != seenResumes[0]) {
+                seenResumes[0] = resumes;
+                if (scheduler != null) {
+                    scheduler.restart();
+                }
+            }
+            long startBytes = GenModelMetrics.currentThreadAllocatedBytes();
+            frameStage.render(generation.state, k);
+            if (startBytes >= 0) {
+                metrics.recordAllocatedBytes(generation.allocatedBytes
+                        + GenModelMetrics.currentThreadAllocatedBytes()
+                        - startBytes);
+            }
+        });
+    }
+
+    private static class MeasuredGeneration<S> {
+
+        private final S state;
+        private final long allocatedBytes; // by the compute stage
+
+        MeasuredGeneration(S state, long allocatedBytes) {
+            this.state = state;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    /**
+     * Animated GenModels call this after drawing a frame, so that the
+     * metrics know the raster time and the frames that missed their step.
+     *
+     * @param rasterNanos Time needed to draw the frame in ns
+     * @param stepMillis Time a frame may take in ms (0 if not limited)
+     */
+    protected void recordFrame(long rasterNanos, long stepMillis) {
+        metrics.recordFrame(rasterNanos, stepMillis);
+    }
+
+    /**
+     * Makes the random parts of generate() reproducible: every run uses the
+     * same seed instead of a new one.
+     *
+     * @param seed The seed of the RandomSource
+     */
+    public void setRandomSeed(long seed) {
+        randomSeed = seed;
+    }
+
+    /**
+     * The seed the last run used, e.g. to reproduce an image from a bug
+     * report with setRandomSeed().
+     *
+     * @return The seed or null if generate() did not use randomness
+     */
+    public Long getUsedRandomSeed() {
+        return usedRandomSeed;
+    }
+
+    /**
+     * Creates the RandomSource for a run of generate(), all randomness of a
+     * GenModel has to come from it.
+     *
+     * @return A source with the seed of setRandomSeed() or a new one
+     */
+    protected RandomSource startRandomSource() {
+        Long seed = randomSeed;
+        long used = seed != null ? seed : RandomSource.newSeed();
+        usedRandomSeed = used;
+        return new RandomSource(used);
+    }
+
+    /**
+     * Creates the FrameScheduler that paces the frames of an animated
+     * GenModel. In headless mode the frames are not paced at all.
+     *
+     * @param stepMillis Time every frame is shown in ms
+     * @return A new scheduler for one run of generate()
+     */
+    protected FrameScheduler createFrameScheduler(long stepMillis) {
+        frameScheduler = new FrameScheduler(headless ? 0 : stepMillis,
+                dropLateFrames, metrics);
+        return frameScheduler;
+    }
+
+    /**
+     * Lets animated GenModels skip frames that are already overdue, so that
+     * they keep their step when drawing takes too long.
+     *
+     * @param dropLateFrames True to skip late frames
+     */
+    public void setDropLateFrames(boolean dropLateFrames) {
+        this.dropLateFrames = dropLateFrames;
+    }
+
+    public boolean isDropLateFrames() {
+        return dropLateFrames;
+    }
+
+    /**
+     * The performance metrics of this GenModel, also available via JMX once
+     * generateInNewThread() was called.
+     *
+     * @return The metrics
+     */
+    public GenModelMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -104,7 +363,7 @@ public abstract class GenModel {
      * @return True if generate() method is processed right now, otherwise false
      */
     public boolean isBackgroundThreadAlive() {
-        return (backgroundThread != null && backgroundThread.isAlive());
+        return (backgroundRun != null && !backgroundRun.isFinished());
     }
     
     /**
@@ -113,58 +372,601 @@ public abstract class GenModel {
      */    
     public void interruptBackgroundThread(){
         if(isBackgroundThreadAlive()){
-            backgroundThread.interrupt();
-            // toggles only a status bit, which still needs to be checked in 
-            // generate(): if(Thread.currentThread().isInterrupted()){return;}
+            backgroundRun.cancel(true); // interrupts the executing thread
+            // toggles only a status bit and cancels the token, which still
+            // need to be checked in generate():
+            // if(getCancellationToken().isCancelled()){return;}
+        }
+        resume();
+    }
+
+    /**
+     * Pauses the current run of an animated GenModel before its next
+     * generation. The thread of the run waits with all its state (the
+     * generation, the random streams, the number of the generation), so
+     * resume() continues exactly where it stopped. Cancelling the run
+     * stops it as well.
+     */
+    public void pause() {
+        synchronized (pauseLock) {
+            paused = true;
+        }
+    }
+
+    /**
+     * Lets a paused run continue, has no effect if it is not paused.
+     */
+    public void resume() {
+        synchronized (pauseLock) {
+            if (paused) {
+                resumeCount++;
+            }
+            paused = false;
+            pauseAnnounced = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Waits while the GenModel is paused, generatePipelined() calls this
+     * before every generation. Other long running generate() methods may
+     * call it at points where the run can rest.
+     *
+     * @throws InterruptedException If the run was stopped while paused
+     */
+    protected void awaitResumed() throws InterruptedException {
+        if (!paused) {
+            return;
+        }
+        synchronized (pauseLock) {
+            // both stages of a pipeline wait, the state is set once
+            if (paused && !pauseAnnounced) {
+                pauseAnnounced = true;
+                setGenState(GenState.PAUSED);
+            }
+            while (paused) {
+                if (cancellationToken.isCancelled()) {
+                    throw new InterruptedException();
+                }
+                pauseLock.wait();
+            }
         }
     }
     
     /**
      * This method gets called automatically from AppController depending on the
      * GenState of the GenModel - it is used inside AppController to get the 
-     * GenModel canvas and displays it in the App canvas.
+     * GenModel canvas and displays it in the App canvas. If the GenModel
+     * draws into a pixel buffer, the buffer is copied onto a canvas first,
+     * so this has to be called from the JavaFX Application Thread.
      */
     public Canvas getCanvas() {
+        if (pixelBuffer != null) {
+            pixelBufferCanvas = pixelBuffer.toCanvas(pixelBufferCanvas);
+            return pixelBufferCanvas;
+        }
         return canvas; // can be null
     }
-    
 
     /**
-     * Saves the GenModel canvas directly under a filename.
+     * Can be used by animated GenModels instead of creating a new PixelBuffer
+     * for every iteration: takes a reusable frame from the pool of this
+     * GenModel, fills it with the background colour and makes it the current
+     * pixelBuffer. The frame goes back to the pool automatically when
+     * AppController displays the next one.
+     *
+     * @param width Width of the frame in px
+     * @param height Height of the frame in px
+     * @param background Background colour as ARGB int
+     * @return The frame to draw the next iteration on
+     * @throws InterruptedException If interrupted while waiting for a frame
+     */
+    protected PixelBuffer acquireFrame(int width, int height, int background)
+            throws InterruptedException {
+        PixelBuffer frame = acquireFrame(width, height);
+        frame.fill(background);
+        return frame;
+    }
+
+    /**
+     * Like acquireFrame(int, int, int), but the frame keeps the pixels of
+     * an earlier iteration. For GenModels that write every pixel anyway,
+     * e.g. with a CellGridRasterizer.
+     *
+     * @param width Width of the frame in px
+     * @param height Height of the frame in px
+     * @return The frame to draw the next iteration on
+     * @throws InterruptedException If interrupted while waiting for a frame
+     */
+    protected PixelBuffer acquireFrame(int width, int height)
+            throws InterruptedException {
+        PixelBuffer frame = framePool.acquire(width, height);
+        synchronized (this) {
+            releaseDrawnSource();
+            pixelBuffer = frame;
+            drawnFrame = frame;
+            drawnScale = displayScale;
+        }
+        return frame;
+    }
+
+    /**
+     * Draws the generation of a native cell frame again at full size, for
+     * GenModels whose cells are not squares. See setFullSizeSource().
+     */
+    protected interface FullSizeSource {
+
+        /**
+         * Called while the frame is displayed, so the generation is still
+         * there. Should only copy what the drawing needs.
+         *
+         * @return Draws the full size image later on another thread
+         */
+        Supplier<PixelBuffer> capture();
+
+        /**
+         * Called once when the frame is neither displayed nor drawn anymore,
+         * e.g. to give the generation back to a pool.
+         */
+        default void release() {
+        }
+    }
+
+    /**
+     * Tells which generation the frame of the last acquireFrame() shows, so
+     * that it can be saved at full size in native cell mode. Without a
+     * source the frame is enlarged, which equals square cells.
+     *
+     * @param source Draws the generation with the full cell size
+     */
+    protected synchronized void setFullSizeSource(FullSizeSource source) {
+        releaseDrawnSource();
+        drawnSource = source;
+    }
+
+    // the source of a frame that was not displayed is not needed anymore
+    private void releaseDrawnSource() {
+        if (drawnSource != null && drawnSource != displayedSource) {
+            drawnSource.release();
+        }
+        drawnSource = null;
+    }
+
+    /**
+     * Gets called by AppController when it displays the current pixelBuffer.
+     * The frame that was displayed before is given back to the frame pool.
+     * The display scale and full size source of the frame are swapped
+     * together with it.
+     *
+     * @return The pixel buffer that is displayed from now on (can be null)
+     */
+    public synchronized PixelBuffer swapDisplayedFrame() {
+        PixelBuffer frame = pixelBuffer;
+        if (frame != displayedFrame) {
+            framePool.release(displayedFrame);
+            if (displayedSource != null && displayedSource != drawnSource) {
+                displayedSource.release();
+            }
+            displayedFrame = frame;
+            boolean drawn = frame != null && frame == drawnFrame;
+            displayedScale = drawn ? drawnScale : 1;
+            displayedSource = drawn ? drawnSource : null;
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the pixel buffer the GenModel draws into instead of a canvas.
+     *
+     * @return The pixel buffer or null if the GenModel uses a canvas
+     */
+    public PixelBuffer getPixelBuffer() {
+        return pixelBuffer;
+    }
+
+    /**
+     * Starts a run with the given snapshot of the parameters. generate()
+     * calls this first and afterwards only reads the returned config, so
+     * that changes of the parameters during the run take effect on the next
+     * one.
+     *
+     * @param <C> Type of the GenModel's config
+     * @param config The parameters of the run
+     * @return The same config
+     */
+    protected <C extends GenConfig> C freezeConfig(C config) {
+        this.config = config;
+        return config;
+    }
+
+    /**
+     * The parameters of the last run (which may still be running).
+     *
+     * @return The config or null if the GenModel has not frozen one yet
+     */
+    public GenConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * A canonical description of all parameters the image of generate()
+     * depends on, e.g. "rule=30,cells=1001". GenModels whose image is the
+     * same for the same parameters get it from the config of their run, so
+     * that the image can be taken from the RenderCache next time.
+     *
+     * @return The fingerprint or null if the image cannot be cached (the
+     * default without a config, e.g. for random initial generations)
+     */
+    protected String getParameterFingerprint() {
+        GenConfig current = config;
+        return current != null ? current.getFingerprint() : null;
+    }
+
+    /**
+     * Takes the image for the current parameters from the RenderCache or,
+     * if it was rendered in an earlier session, from the DiskRenderCache.
+     *
+     * @return True if pixelBuffer now holds the cached image, so that
+     * generate() is done
+     */
+    protected boolean loadCachedImage() {
+        String fingerprint = getParameterFingerprint();
+        if (fingerprint == null) {
+            return false;
+        }
+        String key = getClass().getName() + "{" + fingerprint + "}";
+        PixelBuffer image = RenderCache.getInstance().get(key);
+        if (image == null) {
+            image = DiskRenderCache.getInstance().get(getClass(), fingerprint);
+            if (image == null) {
+                return false;
+            }
+            RenderCache.getInstance().put(key, image);
+        }
+        pixelBuffer = image;
+        setGenState("Image taken from cache");
+        return true;
+    }
+
+    /**
+     * Puts the finished image of generate() into the RenderCache and the
+     * DiskRenderCache, which writes it in the background. It must not be
+     * drawn on afterwards, the next generate() needs a new pixelBuffer.
+     */
+    protected void cacheImage() {
+        String fingerprint = getParameterFingerprint();
+        // an interrupted or cancelled run has not finished its image
+        if (fingerprint != null && pixelBuffer != null
+                && !Thread.currentThread().isInterrupted()
+                && !cancellationToken.isCancelled()) {
+            RenderCache.getInstance().put(
+                    getClass().getName() + "{" + fingerprint + "}",
+                    pixelBuffer);
+            DiskRenderCache.getInstance().putInBackground(getClass(),
+                    fingerprint, pixelBuffer);
+        }
+    }
+
+    /**
+     * File name (without .png) for the last generated image, used when the
+     * image is saved without an explicit name, e.g. by the RenderFarm.
+     * GenModels whose images depend on parameters should include them.
+     *
+     * @return File name of the image
+     */
+    protected String getImageName() {
+        return getClass().getSimpleName();
+    }
+
+
+    /**
+     * Saves the GenModel canvas directly under a filename. The png is written
+     * by the ImageOutputService, so this method only blocks if too many
+     * images are waiting to be written already.
      *
      * @param filename The filename under which the canvas should be saved
      */
     public void saveImage(String filename){
-        // as canvas.snapshot() needs to be called from the JavaFX Application
-        // Thread, make sure it runs on it. Also don't proceed editing canvas
-        // before it was saved
-        waitForCanvasSavedToFile = true;
+        File file = new File(savePath + filename + ".png");
+        Supplier<PixelBuffer> image;
+        if (pixelBuffer != null) {
+            // no snapshot needed, so there is no need for the JavaFX
+            // Application Thread either
+            image = getFullSizeImage();
+        } else {
+            PixelBuffer snapshot = takeSnapshot();
+            if (snapshot == null) {
+                return;
+            }
+            image = () -> snapshot;
+        }
+        try {
+            ImageOutputService.getInstance().write(image, file)
+                    .exceptionally(ex -> {
+                        System.out.println(ex.getMessage());
+                        return null;
+                    });
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * In native cell mode cellular automata draw every cell as a single
+     * pixel, which is much less work per frame for big cells. The App
+     * enlarges the frames by getDisplayScale() without smoothing, and only
+     * saved images are drawn at full size. Takes effect with the next run.
+     *
+     * @param nativeCells True to draw the cells at 1 px
+     */
+    public void setNativeCells(boolean nativeCells) {
+        this.nativeCells = nativeCells;
+    }
+
+    public boolean isNativeCells() {
+        return nativeCells;
+    }
+
+    /**
+     * How many display pixels a pixel of the frame of the last
+     * swapDisplayedFrame() stands for, the cell size in native cell mode.
+     *
+     * @return The factor to enlarge the displayed frame by (1 by default)
+     */
+    public synchronized int getDisplayScale() {
+        return displayedScale;
+    }
+
+    /**
+     * Called by GenModels in native cell mode at the start of a run, before
+     * its first acquireFrame().
+     *
+     * @param displayScale The cell size of the run (1 for full size frames)
+     */
+    protected void setDisplayScale(int displayScale) {
+        this.displayScale = displayScale;
+    }
+
+    /**
+     * The displayed image at its full size, e.g. to save it. In native cell
+     * mode the frame is enlarged or its generation drawn again with the full
+     * cell size. As that takes a while, the caller gets the drawing and can
+     * run it on another thread, e.g. of the ImageOutputService. If nothing
+     * was displayed yet, e.g. on the command line, the pixelBuffer is used.
+     *
+     * @return Draws an image that is not drawn on anymore, null if the
+     * GenModel draws on a canvas
+     */
+    public synchronized Supplier<PixelBuffer> getFullSizeImage() {
+        PixelBuffer frame = displayedFrame != null ? displayedFrame
+                : pixelBuffer;
+        if (frame == null) {
+            return null;
+        }
+        int scale = 1;
+        FullSizeSource source = null;
+        if (frame == displayedFrame) {
+            scale = displayedScale;
+            source = displayedSource;
+        } else if (frame == drawnFrame) {
+            scale = drawnScale;
+            source = drawnSource;
+        }
+        if (scale != 1 && source != null) {
+            return source.capture();
+        }
+        PixelBuffer image = copyIfReused(frame);
+        if (scale == 1) {
+            return () -> image;
+        }
+        int factor = scale;
+        return () -> image.scaled(factor);
+    }
+
+    /**
+     * Frames of the frame pool are drawn on again after they were displayed,
+     * so they have to be copied before they are handed to another thread for
+     * a longer time. All other pixel buffers are replaced by a new one on
+     * the next generate() and can be used as they are.
+     *
+     * @param frame A pixel buffer of this GenModel
+     * @return The pixel buffer itself or a copy of it
+     */
+    public PixelBuffer copyIfReused(PixelBuffer frame) {
+        return framePool.owns(frame) ? frame.copy() : frame;
+    }
+
+    // as canvas.snapshot() needs to be called from the JavaFX Application
+    // Thread, make sure it runs on it. Also don't proceed editing canvas
+    // before the snapshot is taken. Returns null if interrupted.
+    private PixelBuffer takeSnapshot() {
+        CountDownLatch snapshotTaken = new CountDownLatch(1);
+        PixelBuffer[] snapshot = new PixelBuffer[1];
+        long handoffStartTime = System.nanoTime();
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
                 try {
-                    File file = new File(savePath + filename + ".png");
-                    WritableImage writableImage = canvas.snapshot(null, null);
-                    RenderedImage renderedImage =
-                            SwingFXUtils.fromFXImage(writableImage, null);;
-                    ImageIO.write(renderedImage, "png", file);
-                } catch (IOException ex) {
-                    System.out.println(ex.getMessage());
-                }          
-                waitForCanvasSavedToFile= false;                         
+                    snapshot[0] = PixelBuffer.fromImage(
+                            canvas.snapshot(null, null));
+                } finally {
+                    snapshotTaken.countDown();
+                }
             }
         });
-        while (waitForCanvasSavedToFile){
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException ex) {
-                // interrupt current Thread so that it can be stopped later. The
-                // reason why this has to be called is because once an
-                // InterruptedException is caught isInterrupted() is false again
-                Thread.currentThread().interrupt(); // process somewhere later
-                return; // does NOT stop thread, just exits method
+        awaitHandoff(snapshotTaken, handoffStartTime, saveLatency);
+        return snapshot[0];
+    }
+
+    /**
+     * Blocks the generator thread until the JavaFX Application Thread has
+     * counted down the latch, without polling.
+     *
+     * @param latch Latch that gets counted down on the JavaFX Application
+     * Thread
+     * @param handoffStartTime System.nanoTime() when the hand-off was started
+     * @param stats Where to record the time the generator thread waited
+     */
+    private void awaitHandoff(CountDownLatch latch, long handoffStartTime,
+            FrameLatencyStats stats) {
+        try {
+            latch.await();
+            stats.record(System.nanoTime() - handoffStartTime);
+        } catch (InterruptedException ex) {
+            // interrupt current Thread so that it can be stopped later. The
+            // reason why this has to be called is because once an
+            // InterruptedException is caught isInterrupted() is false again
+            Thread.currentThread().interrupt(); // process somewhere later
+            // does NOT stop thread, just exits method
+        }
+    }
+
+    /**
+     * Time the generator thread waited until iterations were displayed in
+     * the App during the current or last run of generate().
+     *
+     * @return Hand-off latency statistics for displayed iterations
+     */
+    public FrameLatencyStats getDisplayLatencyStats() {
+        return displayLatency;
+    }
+
+    /**
+     * Time the generator thread waited until canvases were saved on the
+     * JavaFX Application Thread during the current or last run of generate().
+     *
+     * @return Hand-off latency statistics for saved images
+     */
+    public FrameLatencyStats getSaveLatencyStats() {
+        return saveLatency;
+    }
+
+    /**
+     * In headless mode the GenModel runs without the App: iterations are not
+     * handed to the JavaFX Application Thread and animated GenModels do not
+     * wait between their iterations. Only GenModels that draw into a pixel
+     * buffer can run headless.
+     *
+     * @param headless True to run without the App
+     */
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+        // there is no JavaFX Application Thread to deliver the states to
+        genStatePublisher.setDirect(headless);
+    }
+
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Tells whether the GenModel can run in headless mode, which is the case
+     * if it draws into a pixel buffer. GenModels drawing on a JavaFX Canvas
+     * have to override this method and return false.
+     *
+     * @return True if generate() does not need the JavaFX toolkit
+     */
+    public boolean supportsHeadless() {
+        return true;
+    }
+
+    /**
+     * Sets where every iteration drawn by an animated GenModel is passed to
+     * (in addition to being displayed in the App). The iterations are
+     * numbered from 0 again.
+     *
+     * @param frameSink The receiver of the iterations or null for none
+     */
+    public void setFrameSink(FrameSink frameSink) {
+        this.frameSink = frameSink;
+        frameIndex = 0;
+    }
+
+    /**
+     * Sets a parameter of the GenModel by its name, e.g. "rule" for
+     * WolframGenModel.setRule(int). If there is no such setter, a JavaFX
+     * property getter like getSeedProperty() is used instead. The value is
+     * converted to the type of the parameter, "\n" in text stands for a
+     * line break.
+     *
+     * @param name Name of the parameter as in its setter, e.g. "cellSize"
+     * @param value The value as text
+     * @throws IllegalArgumentException If there is no such parameter or the
+     * value is not valid for it
+     */
+    public void setParameter(String name, String value) {
+        String capitalizedName = Character.toUpperCase(name.charAt(0))
+                + name.substring(1);
+        try {
+            for (Method method : getClass().getMethods()) {
+                if (method.getName().equals("set" + capitalizedName)
+                        && method.getParameterCount() == 1) {
+                    method.invoke(this, convertParameter(
+                            method.getParameterTypes()[0], name, value));
+                    return;
+                }
+            }
+            Method getter = getClass().getMethod(
+                    "get" + capitalizedName + "Property");
+            Object property = getter.invoke(this);
+            if (property instanceof IntegerProperty) {
+                ((IntegerProperty) property).set((Integer) convertParameter(
+                        int.class, name, value));
+            } else if (property instanceof LongProperty) {
+                ((LongProperty) property).set((Long) convertParameter(
+                        long.class, name, value));
+            } else if (property instanceof DoubleProperty) {
+                ((DoubleProperty) property).set((Double) convertParameter(
+                        double.class, name, value));
+            } else if (property instanceof BooleanProperty) {
+                ((BooleanProperty) property).set((Boolean) convertParameter(
+                        boolean.class, name, value));
+            } else if (property instanceof Property) {
+                @SuppressWarnings("unchecked")
+                Property<Object> textProperty = (Property<Object>) property;
+                textProperty.setValue(convertParameter(String.class, name,
+                        value));
+            } else {
+                throw new NoSuchMethodException();
+            }
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new IllegalArgumentException(genName
+                    + " has no parameter \"" + name + "\".");
+        } catch (InvocationTargetException ex) {
+            // e.g. the IllegalArgumentException of a setter's range check
+            throw new IllegalArgumentException(name + ": "
+                    + ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    // Converts the text of a parameter to the type of its setter
+    private static Object convertParameter(Class<?> type, String name,
+            String value) {
+        try {
+            if (type == int.class || type == Integer.class) {
+                return Integer.valueOf(value);
+            } else if (type == long.class || type == Long.class) {
+                return Long.valueOf(value);
+            } else if (type == double.class || type == Double.class) {
+                return Double.valueOf(value);
+            } else if (type == boolean.class || type == Boolean.class) {
+                if (!value.equalsIgnoreCase("true")
+                        && !value.equalsIgnoreCase("false")) {
+                    throw new IllegalArgumentException(name + " requires true or false.");
+                }
+                return Boolean.valueOf(value);
+            } else if (type == String.class) {
+                return value.replace("\\n", "\n");
             }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(name + " requires a number, not \""
+                    + value + "\".");
         }
+        throw new IllegalArgumentException(name + " cannot be set from text.");
     }
 
     /**
@@ -182,8 +984,14 @@ public abstract class GenModel {
         return genState.get();
     }
     
+    /**
+     * Publishes a new GenState. Called from the generator thread, it reaches
+     * the property on the JavaFX Application Thread, see GenStatePublisher.
+     *
+     * @param newGeneratorState The new state
+     */
     public final void setGenState(GenState newGeneratorState) {
-        genState.set(newGeneratorState);    
+        genStatePublisher.publish(newGeneratorState);
     }
     
     public final ObjectProperty<GenState> genStateProperty() {
@@ -197,7 +1005,7 @@ public abstract class GenModel {
      * @param description What shall be displayed in the status label.
      */
     public final void setGenState(String description) {
-        genState.set(new GenState(description));
+        genStatePublisher.publish(new GenState(description));
     }    
     /**
      * Sets the path under which all images that are saved by calling the method
@@ -225,25 +1033,28 @@ public abstract class GenModel {
      *
      */
     public void waitForCanvasIterationDisplayedInApp() {
-        // display canvas but do not update status label
-        setGenState(GenState.ITERATION_READY);
-        canvasIterationDisplayedInApp = true;
-        Platform.runLater(() -> {
-            // the following gets executed after the event handling finishes
-            // (GenState changed -> display canvas in App canvas)
-            canvasIterationDisplayedInApp = false;
-        });
-        while (canvasIterationDisplayedInApp){
+        FrameSink sink = frameSink;
+        if (sink != null && pixelBuffer != null) {
             try {
-                Thread.sleep(1);
-            } catch (InterruptedException ex) {
-                // interrupt current Thread so that it can be stopped later. The
-                // reason why this has to be called is because once an
-                // InterruptedException is caught isInterrupted() is false again
-                Thread.currentThread().interrupt(); // process somewhere later
-                return; // does NOT stop thread, just exits method
+                sink.writeFrame(pixelBuffer, frameIndex++);
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
             }
         }
+        if (headless) {
+            // nothing to display, the frame can be reused right away
+            swapDisplayedFrame();
+            return;
+        }
+        // display canvas but do not update status label
+        CountDownLatch canvasIterationDisplayedInApp = new CountDownLatch(1);
+        long handoffStartTime = System.nanoTime();
+        setGenState(GenState.ITERATION_READY);
+        // the following gets executed after the event handling finishes
+        // (GenState changed -> display canvas in App canvas)
+        Platform.runLater(canvasIterationDisplayedInApp::countDown);
+        awaitHandoff(canvasIterationDisplayedInApp, handoffStartTime,
+                displayLatency);
         //setGenState("Calculate iteration x...");
         // now a new canvas can be safely be created
         // NOTE 1: You dont't need this method if you only use a single canvas.
@@ -0,0 +1,296 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects where the time of a GenModel goes: calculating generations,
+ * drawing (rastering) them and waiting for the App to display them, as well
+ * as frame rates and the memory allocated per frame. Every GenModel has one,
+ * it can be registered as MBean to watch it with JConsole or VisualVM.
+ *
+ * @author Moritz Rieger
+ */
+public class GenModelMetrics implements GenModelMetricsMBean {
+
+    private static final ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean();
+
+    private final GenModel model;
+    private final FrameLatencyStats compute = new FrameLatencyStats();
+    private final FrameLatencyStats raster = new FrameLatencyStats();
+    private final FrameLatencyStats displayWait;
+    private final FrameLatencyStats stopLatency = new FrameLatencyStats();
+    private final FrameLatencyStats jitter = new FrameLatencyStats();
+    private volatile long lastRunNanos;
+    private volatile long targetFrameNanos;
+    private long firstFrameNanos;
+    private long lastFrameNanos;
+    private long frames;
+    private long droppedFrames;
+    private long skippedFrames;
+    private long allocatedBytes; // in all frames
+    private long lastAllocatedBytes;
+    private long allocationFrames; // frames allocatedBytes was measured for
+
+    /**
+     * @param model The GenModel to measure
+     * @param displayWait The stats the GenModel records its display hand-offs
+     * in
+     */
+    GenModelMetrics(GenModel model, FrameLatencyStats displayWait) {
+        this.model = model;
+        this.displayWait = displayWait;
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server, an MBean of an
+     * earlier GenModel of the same generator is replaced.
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("propra:type=GenModel,name="
+                    + model.getClass().getSimpleName());
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException ex) {
+            System.out.println("Cannot register metrics: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, if the JVM can measure
+     * it (HotSpot can), otherwise -1.
+     *
+     * @return Allocated bytes or -1
+     */
+    static long currentThreadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    void recordRun(long nanos) {
+        lastRunNanos = nanos;
+    }
+
+    void recordCompute(long nanos) {
+        compute.record(nanos);
+    }
+
+    void recordJitter(long nanos) {
+        jitter.record(nanos);
+    }
+
+    synchronized void recordSkippedFrame() {
+        skippedFrames++;
+    }
+
+    void recordStopLatency(long nanos) {
+        stopLatency.record(nanos);
+    }
+
+    synchronized void recordAllocatedBytes(long bytes) {
+        allocatedBytes += bytes;
+        lastAllocatedBytes = bytes;
+        allocationFrames++;
+    }
+
+    /**
+     * Adds a drawn frame.
+     *
+     * @param rasterNanos Time needed to draw it
+     * @param stepMillis Time the frame may take (0 for as fast as possible)
+     */
+    synchronized void recordFrame(long rasterNanos, long stepMillis) {
+        raster.record(rasterNanos);
+        long now = System.nanoTime();
+        if (frames == 0) {
+            firstFrameNanos = now;
+        }
+        lastFrameNanos = now;
+        frames++;
+        targetFrameNanos = stepMillis * 1000000;
+        if (targetFrameNanos > 0 && rasterNanos > targetFrameNanos) {
+            droppedFrames++;
+        }
+    }
+
+    @Override
+    public String getGeneratorName() {
+        return model.getGenName();
+    }
+
+    @Override
+    public long getLastRunNanos() {
+        return lastRunNanos;
+    }
+
+    @Override
+    public long getGenerations() {
+        return compute.getCount();
+    }
+
+    @Override
+    public long getLastComputeNanos() {
+        return compute.getLastNanos();
+    }
+
+    @Override
+    public long getMeanComputeNanos() {
+        return compute.getMeanNanos();
+    }
+
+    @Override
+    public long getMaxComputeNanos() {
+        return compute.getMaxNanos();
+    }
+
+    @Override
+    public long getLastRasterNanos() {
+        return raster.getLastNanos();
+    }
+
+    @Override
+    public long getMeanRasterNanos() {
+        return raster.getMeanNanos();
+    }
+
+    @Override
+    public long getMaxRasterNanos() {
+        return raster.getMaxNanos();
+    }
+
+    @Override
+    public long getLastDisplayWaitNanos() {
+        return displayWait.getLastNanos();
+    }
+
+    @Override
+    public long getMeanDisplayWaitNanos() {
+        return displayWait.getMeanNanos();
+    }
+
+    @Override
+    public long getMaxDisplayWaitNanos() {
+        return displayWait.getMaxNanos();
+    }
+
+    @Override
+    public double getTargetFps() {
+        long nanos = targetFrameNanos;
+        return nanos > 0 ? 1e9 / nanos : 0;
+    }
+
+    @Override
+    public synchronized double getAchievedFps() {
+        // n frames span n - 1 frame intervals
+        return frames < 2 ? 0
+                : (frames - 1) * 1e9 / (lastFrameNanos - firstFrameNanos);
+    }
+
+    @Override
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public synchronized long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    @Override
+    public long getMeanJitterNanos() {
+        return jitter.getMeanNanos();
+    }
+
+    @Override
+    public long getMaxJitterNanos() {
+        return jitter.getMaxNanos();
+    }
+
+    @Override
+    public synchronized long getLastAllocatedBytesPerFrame() {
+        return lastAllocatedBytes;
+    }
+
+    @Override
+    public synchronized long getMeanAllocatedBytesPerFrame() {
+        return allocationFrames == 0 ? 0 : allocatedBytes / allocationFrames;
+    }
+
+    @Override
+    public long getLastStopLatencyNanos() {
+        return stopLatency.getLastNanos();
+    }
+
+    @Override
+    public long getMaxStopLatencyNanos() {
+        return stopLatency.getMaxNanos();
+    }
+
+    @Override
+    public synchronized void reset() {
+        compute.reset();
+        raster.reset();
+        displayWait.reset();
+        jitter.reset();
+        skippedFrames = 0;
+        allocatedBytes = 0;
+        lastAllocatedBytes = 0;
+        allocationFrames = 0;
+        frames = 0;
+        droppedFrames = 0;
+        targetFrameNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: run %.1f ms, %d generations, compute "
+                + "%.3f ms, raster %.3f ms, display wait %.3f ms, %.1f of "
+                + "%.1f fps, %d dropped, %d skipped, jitter %.3f ms, "
+                + "%d bytes/frame", getGeneratorName(),
+                getLastRunNanos() / 1e6, getGenerations(),
+                getMeanComputeNanos() / 1e6,
+                getMeanRasterNanos() / 1e6, getMeanDisplayWaitNanos() / 1e6,
+                getAchievedFps(), getTargetFps(), getDroppedFrames(),
+                getSkippedFrames(), getMeanJitterNanos() / 1e6,
+                getMeanAllocatedBytesPerFrame());
+    }
+
+}
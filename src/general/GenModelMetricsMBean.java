@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+/**
+ * The metrics of a GenModel as they are shown in JConsole or VisualVM
+ * (under "propra" in the MBeans tab). All times are in nanoseconds.
+ *
+ * @author Moritz Rieger
+ */
+public interface GenModelMetricsMBean {
+
+    String getGeneratorName();
+
+    /**
+     * @return Duration of the last complete generate() run
+     */
+    long getLastRunNanos();
+
+    /**
+     * @return Number of generations calculated in the current run
+     */
+    long getGenerations();
+
+    long getLastComputeNanos();
+
+    long getMeanComputeNanos();
+
+    long getMaxComputeNanos();
+
+    long getLastRasterNanos();
+
+    long getMeanRasterNanos();
+
+    long getMaxRasterNanos();
+
+    long getLastDisplayWaitNanos();
+
+    long getMeanDisplayWaitNanos();
+
+    long getMaxDisplayWaitNanos();
+
+    /**
+     * @return Frames per second the step length asks for (0 if unlimited)
+     */
+    double getTargetFps();
+
+    /**
+     * @return Frames per second since the first frame of the current run
+     */
+    double getAchievedFps();
+
+    /**
+     * @return Frames that took longer to compute and draw than the step
+     * length allows
+     */
+    long getDroppedFrames();
+
+    /**
+     * @return Frames the FrameScheduler skipped because they were overdue
+     */
+    long getSkippedFrames();
+
+    /**
+     * @return How late frames were shown after their deadline on average
+     */
+    long getMeanJitterNanos();
+
+    long getMaxJitterNanos();
+
+    long getLastAllocatedBytesPerFrame();
+
+    long getMeanAllocatedBytesPerFrame();
+
+    /**
+     * @return Time the last cancelled run needed to return from generate()
+     * after it was cancelled
+     */
+    long getLastStopLatencyNanos();
+
+    long getMaxStopLatencyNanos();
+
+    /**
+     * Sets all metrics of the run back to 0. The stop latencies are kept,
+     * as a run is usually cancelled by starting the next one.
+     */
+    void reset();
+
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Knows all generators of the App by a short name (as used on the command
+ * line) and can create new instances of their GenModels. It also knows the
+ * FXML file of each generator's view, whose GenController creates the
+ * GenModel for the App.
+ * <p>
+ * The generators are discovered with a ServiceLoader: every GenModel listed
+ * in META-INF/services/general.GenModel whose view lies next to it, named
+ * like the model with "View" instead of "Model" (e.g. WolframGenModel and
+ * WolframGenView.fxml), is registered under its getRegistryName().
+ *
+ * @author Moritz Rieger
+ */
+public class GenRegistry {
+
+    private static final Map<String, Class<? extends GenModel>> MODELS =
+            new LinkedHashMap<>();
+    private static final Map<String, String> VIEWS = new LinkedHashMap<>();
+
+    static {
+        for (GenModel model : ServiceLoader.load(GenModel.class,
+                GenModel.class.getClassLoader())) {
+            register(model);
+        }
+    }
+
+    private static void register(GenModel model) {
+        Class<? extends GenModel> modelClass = model.getClass();
+        String name = model.getRegistryName().toLowerCase();
+        String viewPath = getConventionalViewPath(modelClass);
+        if (MODELS.containsKey(name)) {
+            System.err.println(modelClass.getName() + " is not registered: "
+                    + MODELS.get(name).getName() + " already uses the name \""
+                    + name + "\".");
+        } else if (modelClass.getResource(viewPath) == null) {
+            System.err.println(modelClass.getName() + " is not registered: "
+                    + "its view " + viewPath + " is missing.");
+        } else {
+            MODELS.put(name, modelClass);
+            VIEWS.put(name, viewPath);
+        }
+    }
+
+    private static String getConventionalViewPath(
+            Class<? extends GenModel> modelClass) {
+        String className = modelClass.getName().replace('.', '/');
+        if (className.endsWith("Model")) {
+            className = className.substring(0,
+                    className.length() - "Model".length());
+        }
+        return "/" + className + "View.fxml";
+    }
+
+    private GenRegistry() {
+    }
+
+    /**
+     * The short names of all generators, in the order of the services file,
+     * which follows the App menu.
+     *
+     * @return Names that can be passed to createModel()
+     */
+    public static Set<String> getNames() {
+        return Collections.unmodifiableSet(MODELS.keySet());
+    }
+
+    /**
+     * The short name a GenModel is registered under.
+     *
+     * @param model A GenModel
+     * @return Name that can be passed to createModel()
+     */
+    public static String getName(GenModel model) {
+        for (Map.Entry<String, Class<? extends GenModel>> entry
+                : MODELS.entrySet()) {
+            if (entry.getValue() == model.getClass()) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalArgumentException(model.getGenName()
+                + " is not registered.");
+    }
+
+    /**
+     * The FXML file of a generator's view.
+     *
+     * @param name Short name of the generator, e.g. "wolfram"
+     * @return Path of the FXML file as resource
+     */
+    public static String getViewPath(String name) {
+        String path = VIEWS.get(name.toLowerCase());
+        if (path == null) {
+            throw new IllegalArgumentException("Unknown generator \"" + name
+                    + "\", known generators are " + MODELS.keySet() + ".");
+        }
+        return path;
+    }
+
+    /**
+     * Creates a new, independent GenModel with default parameters.
+     *
+     * @param name Short name of the generator, e.g. "wolfram"
+     * @return A new GenModel of that generator
+     */
+    public static GenModel createModel(String name) {
+        Class<? extends GenModel> modelClass = MODELS.get(name.toLowerCase());
+        if (modelClass == null) {
+            throw new IllegalArgumentException("Unknown generator \"" + name
+                    + "\", known generators are " + MODELS.keySet() + ".");
+        }
+        try {
+            return modelClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot create " + name, ex);
+        }
+    }
+
+}
@@ -40,6 +40,8 @@ public class GenState {
             new GenState("Finished! And ready again!");
     public static final GenState ITERATION_READY =
             new GenState("This text will intentionally not get displayed!");
+    public static final GenState PAUSED =
+            new GenState("Paused, press Resume to continue.");
     //public static final GenState CALCULATIONS_DONE =
             //new GenState("Calculations are done!");
     
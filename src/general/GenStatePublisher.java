@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+
+/**
+ * Hands the GenStates a generator thread publishes over to the JavaFX
+ * Application Thread without flooding its event queue. At most one update is
+ * waiting in the queue at any time; descriptive states that are published
+ * meanwhile replace each other, so only the latest one gets displayed. The
+ * fixed states READY, FINISHED_READY, ITERATION_READY and PAUSED are never
+ * dropped and are delivered in the order they were published.
+ *
+ * @author Moritz Rieger
+ */
+class GenStatePublisher {
+
+    private final ObjectProperty<GenState> genState;
+    private final List<GenState> pending = new ArrayList<>();
+    private final AtomicBoolean deliveryScheduled = new AtomicBoolean();
+    private volatile boolean direct;
+    private long publishedStates;
+    private long deliveredStates;
+
+    /**
+     * @param genState The property the states are delivered to
+     */
+    GenStatePublisher(ObjectProperty<GenState> genState) {
+        this.genState = genState;
+    }
+
+    /**
+     * In direct mode (without JavaFX, e.g. headless runs) states are set on
+     * the publishing thread right away.
+     *
+     * @param direct True to skip the JavaFX Application Thread
+     */
+    void setDirect(boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * Publishes a state from any thread.
+     *
+     * @param state The new state
+     */
+    void publish(GenState state) {
+        if (direct || Platform.isFxApplicationThread()) {
+            synchronized (this) {
+                publishedStates++;
+                deliveredStates++;
+            }
+            genState.set(state);
+            return;
+        }
+        synchronized (this) {
+            publishedStates++;
+            int last = pending.size() - 1;
+            if (!isFixed(state) && last >= 0 && !isFixed(pending.get(last))) {
+                pending.set(last, state); // the old description is outdated
+            } else {
+                pending.add(state);
+            }
+        }
+        if (!deliveryScheduled.getAndSet(true)) {
+            Platform.runLater(this::deliver);
+        }
+    }
+
+    // runs on the JavaFX Application Thread
+    private void deliver() {
+        // reset before taking the states, so that states published from now
+        // on schedule a new delivery
+        deliveryScheduled.set(false);
+        List<GenState> states;
+        synchronized (this) {
+            states = new ArrayList<>(pending);
+            pending.clear();
+            deliveredStates += states.size();
+        }
+        for (GenState state : states) {
+            genState.set(state);
+        }
+    }
+
+    private static boolean isFixed(GenState state) {
+        return state == GenState.READY || state == GenState.FINISHED_READY
+                || state == GenState.ITERATION_READY
+                || state == GenState.PAUSED;
+    }
+
+    /**
+     * @return Number of states published so far
+     */
+    synchronized long getPublishedStates() {
+        return publishedStates;
+    }
+
+    /**
+     * @return Number of states that actually reached the property, the
+     * difference to getPublishedStates() was coalesced
+     */
+    synchronized long getDeliveredStates() {
+        return deliveredStates;
+    }
+
+}
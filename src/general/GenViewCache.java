@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.stage.Stage;
+
+/**
+ * Keeps the views of the generators ready, so that switching between them
+ * does not stall the App. After startup prewarm() loads the FXML of every
+ * generator (which also creates its GenController and GenModel) on a
+ * background thread, as nodes may be created outside of the JavaFX
+ * Application Thread as long as they are not shown. Views that were shown
+ * are kept with their window and parameters; only the least recently used
+ * beyond "propra.views.cached" (default 3) are dropped and loaded fresh in
+ * the background again.
+ *
+ * Apart from the loading itself everything runs on the JavaFX Application
+ * Thread.
+ *
+ * @author Moritz Rieger
+ */
+class GenViewCache {
+
+    static final String CACHED_VIEWS_PROPERTY = "propra.views.cached";
+
+    /**
+     * The loaded view of a generator.
+     */
+    static class View {
+
+        final String name;
+        final Parent content;
+        final GenController controller;
+        Stage stage; // created by the AppController when first shown
+
+        View(String name, Parent content, GenController controller) {
+            this.name = name;
+            this.content = content;
+            this.controller = controller;
+        }
+    }
+
+    private static GenViewCache instance;
+
+    private final int maxCachedViews;
+    private final ExecutorService loader;
+    // views loaded in advance that were not shown yet
+    private final Map<String, FutureTask<View>> prepared = new HashMap<>();
+    // views that were shown, the least recently used first
+    private final LinkedHashMap<String, View> shown =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private GenViewCache(int maxCachedViews) {
+        this.maxCachedViews = maxCachedViews;
+        loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "view-loader");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY); // the App comes first
+            return thread;
+        });
+    }
+
+    static GenViewCache getInstance() {
+        if (instance == null) {
+            instance = new GenViewCache(Math.max(1,
+                    Integer.getInteger(CACHED_VIEWS_PROPERTY, 3)));
+        }
+        return instance;
+    }
+
+    /**
+     * Starts loading the views of all generators in the background.
+     */
+    void prewarm() {
+        for (String name : GenRegistry.getNames()) {
+            if (!prepared.containsKey(name) && !shown.containsKey(name)) {
+                prepare(name);
+            }
+        }
+    }
+
+    private void prepare(String name) {
+        FutureTask<View> task = new FutureTask<>(() -> load(name));
+        prepared.put(name, task);
+        loader.execute(task);
+    }
+
+    private static View load(String name) throws IOException {
+        FXMLLoader loader = new FXMLLoader();
+        loader.setLocation(App.class.getResource(
+                GenRegistry.getViewPath(name)));
+        Parent content = loader.load();
+        return new View(name, content, loader.getController());
+    }
+
+    /**
+     * Returns the view of a generator, usually without any loading: a view
+     * that was shown before comes back as it was left, otherwise the one
+     * loaded in advance is taken. If that is not finished yet, it is waited
+     * for (or loaded right here if its loading has not started).
+     *
+     * @param name Short name of the generator in the GenRegistry
+     * @return The view
+     * @throws IOException If the FXML file cannot be loaded
+     */
+    View get(String name) throws IOException {
+        View view = shown.get(name);
+        if (view != null) {
+            return view;
+        }
+        FutureTask<View> task = prepared.remove(name);
+        if (task == null) {
+            task = new FutureTask<>(() -> load(name));
+        }
+        task.run(); // does nothing if the loader has taken it already
+        try {
+            view = task.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException
+                    ? (IOException) ex.getCause()
+                    : new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Loading " + name + " was interrupted.");
+        }
+        shown.put(name, view);
+        evict();
+        return view;
+    }
+
+    // The dropped views may hold large images, a fresh view without any
+    // image is prepared instead
+    private void evict() {
+        Iterator<View> views = shown.values().iterator();
+        while (shown.size() > maxCachedViews) {
+            View view = views.next();
+            views.remove();
+            view.controller.getModel().interruptBackgroundThread();
+            if (view.stage != null) {
+                view.stage.close();
+            }
+            prepare(view.name);
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A two stage pipeline for animated generators: a compute thread calculates
+ * the states of the generations one after another and puts them into a small
+ * ring buffer, while the thread that called run() takes them out and turns
+ * them into frames (and waits for them to be displayed). As both stages work
+ * at the same time, the frame rate is bounded by the slower stage instead of
+ * the sum of both.
+ *
+ * The compute stage must return a new state object for every generation (or
+ * at least never change a state after it was returned), because the state is
+ * read by the frame stage while the next one is being computed.
+ *
+ * @author Moritz Rieger
+ * @param <S> Type of the state of a single generation
+ */
+public class GenerationPipeline<S> {
+
+    /**
+     * Calculates the state of a generation, runs on the compute thread.
+     *
+     * @param <S> Type of the state of a single generation
+     */
+    public interface ComputeStage<S> {
+
+        S compute(int generation) throws InterruptedException;
+    }
+
+    /**
+     * Turns the state of a generation into a frame, runs on the thread that
+     * called run().
+     *
+     * @param <S> Type of the state of a single generation
+     */
+    public interface FrameStage<S> {
+
+        void render(S state, int generation) throws InterruptedException;
+    }
+
+    // compute threads are not taken from the GeneratorExecutor, as a
+    // pipeline waiting there for its own compute stage could block forever
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService COMPUTE_THREADS =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "generator-compute-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // put into the ring buffer when the compute stage stopped early
+    private static final Object STOPPED = new Object();
+
+    private final int capacity;
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param capacity How many generations the compute stage may be ahead of
+     * the frame stage
+     */
+    public GenerationPipeline(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Runs both stages for the given number of generations and returns when
+     * the last frame is rendered. If the calling thread gets interrupted, the
+     * compute thread is stopped as well. If the compute stage stops early
+     * (throws an InterruptedException, e.g. because its run was cancelled),
+     * run() stops after the generations computed so far. In any case the
+     * compute stage has ended when run() returns, so it cannot overlap with
+     * the next run of the same GenModel.
+     *
+     * @param numGens Number of generations
+     * @param computeStage Calculates the generations on the compute thread
+     * @param frameStage Renders the generations on the calling thread
+     * @throws InterruptedException If the calling thread was interrupted or
+     * the compute stage stopped early
+     */
+    @SuppressWarnings("unchecked")
+    public void run(int numGens, ComputeStage<S> computeStage,
+            FrameStage<S> frameStage) throws InterruptedException {
+        BlockingQueue<Object> ringBuffer = new ArrayBlockingQueue<>(capacity);
+        // the compute stage only starts if run() has not ended before, and
+        // run() waits for a compute stage that has started
+        AtomicBoolean started = new AtomicBoolean();
+        CountDownLatch computeEnded = new CountDownLatch(1);
+        Future<?> computeThread = COMPUTE_THREADS.submit(() -> {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                computeAll(numGens, computeStage, ringBuffer);
+            } finally {
+                computeEnded.countDown();
+            }
+        });
+        try {
+            for (int k = 0; k < numGens; k++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                Object next = ringBuffer.take();
+                if (next == STOPPED) {
+                    throw new InterruptedException();
+                }
+                if (next instanceof Failure) {
+                    Throwable cause = ((Failure) next).cause;
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw (RuntimeException) cause;
+                }
+                frameStage.render(((Generation<S>) next).state, k);
+            }
+        } finally {
+            boolean computing = !started.compareAndSet(false, true);
+            computeThread.cancel(true);
+            if (computing) {
+                // the compute stage writes state of the GenModel, it must
+                // not go on in the background while the next run starts
+                awaitComputeEnd(computeEnded, ringBuffer);
+            }
+            ringBuffer.clear();
+        }
+    }
+
+    // the compute stage, puts the states and finally a marker if it stopped
+    // early
+    private void computeAll(int numGens, ComputeStage<S> computeStage,
+            BlockingQueue<Object> ringBuffer) {
+        Object end;
+        try {
+            for (int k = 0; k < numGens; k++) {
+                ringBuffer.put(new Generation<>(computeStage.compute(k)));
+            }
+            return;
+        } catch (InterruptedException ex) {
+            end = STOPPED;
+        } catch (RuntimeException | Error ex) {
+            // hand the problem over to the frame stage
+            end = new Failure(ex);
+        }
+        // the frame stage must not wait for further states. If it has
+        // stopped already, it empties the ring buffer, so there is room
+        // for the marker.
+        try {
+            ringBuffer.put(end);
+        } catch (InterruptedException ex) {
+            // frame stage has stopped already
+        }
+    }
+
+    // The compute stage was interrupted, so the wait is short and an
+    // interrupt of the caller is kept for later. The ring buffer is emptied
+    // meanwhile, so that the compute stage never waits for room in it.
+    private static void awaitComputeEnd(CountDownLatch computeEnded,
+            BlockingQueue<Object> ringBuffer) {
+        boolean interrupted = false;
+        while (true) {
+            ringBuffer.clear();
+            try {
+                if (computeEnded.await(10, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // wraps a state, so that null states can be put in the ring buffer too
+    private static class Generation<S> {
+
+        private final S state;
+
+        private Generation(S state) {
+            this.state = state;
+        }
+    }
+
+    // marks that the compute stage has failed
+    private static class Failure {
+
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The single place where the generate() methods of all GenModels get
+ * executed. Instead of starting a new Thread every time Generate is pressed,
+ * runs are submitted to a shared executor with a bounded number of named
+ * threads, so that quickly repeated clicks cannot stack up runs.
+ *
+ * The number of concurrent runs can be set with the system property
+ * "propra.generator.threads" (default: number of cores). With
+ * "propra.generator.virtualThreads=true" every run gets its own virtual
+ * thread if the running JVM supports them (Java 21+), the number of
+ * concurrent runs is still bounded.
+ *
+ * @author Moritz Rieger
+ */
+public class GeneratorExecutor {
+
+    public static final String THREADS_PROPERTY = "propra.generator.threads";
+    public static final String VIRTUAL_THREADS_PROPERTY =
+            "propra.generator.virtualThreads";
+
+    private static GeneratorExecutor instance;
+
+    private final ExecutorService executor;
+    private final int maxConcurrentRuns;
+    private final boolean virtualThreads;
+    // bounds the concurrent runs on virtual threads, the thread pool does
+    // that by itself
+    private final Semaphore virtualThreadPermits;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private GeneratorExecutor(int maxConcurrentRuns, boolean useVirtualThreads) {
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        ExecutorService virtualThreadExecutor = useVirtualThreads
+                ? createVirtualThreadExecutor() : null;
+        if (virtualThreadExecutor != null) {
+            executor = virtualThreadExecutor;
+            virtualThreads = true;
+            virtualThreadPermits = new Semaphore(maxConcurrentRuns);
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrentRuns,
+                    maxConcurrentRuns, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "generator-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true); // do not keep the App alive
+                    return thread;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true); // no idle threads
+            executor = pool;
+            virtualThreads = false;
+            virtualThreadPermits = null;
+        }
+    }
+
+    /**
+     * Returns the executor shared by all GenModels, it is created with the
+     * settings from the system properties on first use.
+     *
+     * @return The shared GeneratorExecutor
+     */
+    public static synchronized GeneratorExecutor getInstance() {
+        if (instance == null) {
+            int threads = Integer.getInteger(THREADS_PROPERTY,
+                    Runtime.getRuntime().availableProcessors());
+            instance = new GeneratorExecutor(Math.max(1, threads),
+                    Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY));
+        }
+        return instance;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() only exists since Java 21,
+    // so it is looked up at runtime
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            System.out.println("Virtual threads are not supported by this JVM, "
+                    + "using platform threads instead.");
+            return null;
+        }
+    }
+
+    /**
+     * Submits a run of a generator.
+     *
+     * @param task What the run shall execute, usually generate()
+     * @return The handle to cancel the run or wait for it to stop
+     */
+    public GeneratorRun submit(Runnable task) {
+        return submit(task, new CancellationToken());
+    }
+
+    /**
+     * Submits a run of a generator that checks the given token.
+     *
+     * @param task What the run shall execute, usually generate()
+     * @param token Gets cancelled together with the run
+     * @return The handle to cancel the run or wait for it to stop
+     */
+    public GeneratorRun submit(Runnable task, CancellationToken token) {
+        GeneratorRun run = new GeneratorRun(task, token);
+        executor.execute(run);
+        return run;
+    }
+
+    /**
+     * Cancels a previous run and submits a new one that starts only after
+     * the previous run has actually finished, so two runs of a GenModel
+     * never execute at the same time. Nothing waits for the previous run,
+     * the calling thread (e.g. the JavaFX Application Thread) returns at
+     * once.
+     *
+     * @param previous The run to replace (can be null)
+     * @param task What the new run shall execute, usually generate()
+     * @param token Gets cancelled together with the new run
+     * @return The handle of the new run, it counts as not finished while it
+     * waits for the previous run
+     */
+    public GeneratorRun submitAfter(GeneratorRun previous, Runnable task,
+            CancellationToken token) {
+        if (previous == null) {
+            return submit(task, token);
+        }
+        GeneratorRun run = new GeneratorRun(task, token);
+        previous.cancel(true);
+        // a run that gets cancelled while it waits is still executed, but
+        // returns at once and passes on to the run after it
+        previous.whenFinished(() -> executor.execute(run));
+        return run;
+    }
+
+    public int getMaxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * A Future of a single generator run that, unlike a plain Future, knows
+     * when its thread has actually left the task after a cancellation.
+     */
+    public class GeneratorRun extends FutureTask<Void> {
+
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final CancellationToken token;
+        private Runnable onFinished; // guarded by this
+
+        private GeneratorRun(Runnable task, CancellationToken token) {
+            super(task, null);
+            this.token = token;
+        }
+
+        /**
+         * Cancels the token of the run as well, so generators that only
+         * check the token stop too.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            token.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (virtualThreads) {
+                    Thread.currentThread().setName(
+                            "generator-" + threadCount.incrementAndGet());
+                    virtualThreadPermits.acquire();
+                    try {
+                        super.run();
+                    } finally {
+                        virtualThreadPermits.release();
+                    }
+                } else {
+                    super.run();
+                }
+            } catch (InterruptedException ex) {
+                cancel(false); // cancelled while waiting for a permit
+            } finally {
+                Runnable action;
+                synchronized (this) {
+                    finished.countDown();
+                    action = onFinished;
+                    onFinished = null;
+                }
+                if (action != null) {
+                    action.run();
+                }
+            }
+        }
+
+        // Runs the action on the thread that finishes this run, or right
+        // away if it has finished already
+        private void whenFinished(Runnable action) {
+            synchronized (this) {
+                if (finished.getCount() > 0) {
+                    onFinished = action;
+                    return;
+                }
+            }
+            action.run();
+        }
+
+        /**
+         * Checks whether the thread of this run has left the task. A run
+         * that was cancelled before it started finishes once it would have
+         * been started, e.g. after the run it waited for in submitAfter().
+         *
+         * @return True if nothing of this run is executed anymore
+         */
+        public boolean isFinished() {
+            return finished.getCount() == 0;
+        }
+    }
+
+}
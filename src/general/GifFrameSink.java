@@ -0,0 +1,274 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Appends every iteration of an animated GenModel to an animated gif while
+ * it is generated. Only the bounding box of the pixels that changed since
+ * the previous iteration is written, the rest of the picture is kept from
+ * the frames before. Apart from the gif stream only a copy of the previous
+ * iteration is held in memory, so the length of the animation is not
+ * limited.
+ *
+ * @author Moritz Rieger
+ */
+public class GifFrameSink implements FrameSink, Closeable {
+
+    private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+    private final ImageWriter writer;
+    private final ImageOutputStream output;
+    private final int delay; // in 1/100 s as in the gif format
+    private int[] previousFrame;
+    private int width;
+    private int height;
+
+    /**
+     * Creates the gif file and starts the animation.
+     *
+     * @param file The gif file
+     * @param delayMillis How long every iteration is shown
+     * @throws IOException If the file cannot be created
+     */
+    public GifFrameSink(File file, int delayMillis) throws IOException {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("The delay must not be negative.");
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix("gif");
+        if (!writers.hasNext()) {
+            throw new IOException("No gif writer available.");
+        }
+        writer = writers.next();
+        file.delete(); // otherwise the old file would only be overwritten
+        output = ImageIO.createImageOutputStream(file);
+        if (output == null) {
+            throw new IOException("Cannot write " + file);
+        }
+        writer.setOutput(output);
+        writer.prepareWriteSequence(null);
+        delay = Math.round(delayMillis / 10f);
+    }
+
+    @Override
+    public synchronized void writeFrame(PixelBuffer frame, int index)
+            throws IOException {
+        int[] pixels = frame.getPixels();
+        boolean firstFrame = previousFrame == null;
+        if (firstFrame) {
+            width = frame.getWidth();
+            height = frame.getHeight();
+            previousFrame = new int[pixels.length];
+        } else if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IOException("All iterations of a gif need the size "
+                    + width + "x" + height + ".");
+        }
+
+        // bounding box of the pixels that changed since the last iteration
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        if (firstFrame) {
+            minX = 0;
+            minY = 0;
+            maxX = width - 1;
+            maxY = height - 1;
+        } else {
+            for (int y = 0; y < height; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    if (pixels[row + x] != previousFrame[row + x]) {
+                        if (x < minX) {
+                            minX = x;
+                        }
+                        if (x > maxX) {
+                            maxX = x;
+                        }
+                        if (y < minY) {
+                            minY = y;
+                        }
+                        maxY = y;
+                    }
+                }
+            }
+            if (maxX < 0) {
+                // nothing changed, but the iteration still needs its time
+                minX = 0;
+                minY = 0;
+                maxX = 0;
+                maxY = 0;
+            }
+        }
+        System.arraycopy(pixels, 0, previousFrame, 0, pixels.length);
+
+        BufferedImage region = toIndexedImage(pixels, minX, minY,
+                maxX - minX + 1, maxY - minY + 1);
+        writer.writeToSequence(new IIOImage(region, null,
+                createMetadata(region, minX, minY, firstFrame)), null);
+    }
+
+    /**
+     * Finishes the gif and closes the file.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+            output.close();
+        }
+    }
+
+    // The CA generators use only a few colors, so the region gets its own
+    // exact palette. Other pictures are reduced to the default palette.
+    private BufferedImage toIndexedImage(int[] pixels, int x0, int y0, int w,
+            int h) {
+        // neighbouring pixels mostly have the same color, so the last color
+        // is remembered to skip most of the map lookups
+        Map<Integer, Integer> palette = new HashMap<>();
+        int lastColor = 0;
+        for (int y = y0; y < y0 + h && palette.size() <= 256; y++) {
+            for (int x = x0; x < x0 + w; x++) {
+                int color = pixels[y * width + x] | 0xFF000000;
+                if (color != lastColor) {
+                    palette.putIfAbsent(color, palette.size());
+                    lastColor = color;
+                }
+            }
+        }
+        if (palette.size() > 256) {
+            BufferedImage image = new BufferedImage(w, h,
+                    BufferedImage.TYPE_BYTE_INDEXED);
+            image.setRGB(0, 0, w, h, pixels, y0 * width + x0, width);
+            return image;
+        }
+        // the gif format needs a power of two colors
+        int size = 2;
+        while (size < palette.size()) {
+            size *= 2;
+        }
+        int[] colors = new int[size];
+        for (Map.Entry<Integer, Integer> color : palette.entrySet()) {
+            colors[color.getValue()] = color.getKey();
+        }
+        IndexColorModel colorModel = new IndexColorModel(8, size, colors, 0,
+                false, -1, DataBuffer.TYPE_BYTE);
+        BufferedImage image = new BufferedImage(w, h,
+                BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        WritableRaster raster = image.getRaster();
+        int[] row = new int[w];
+        lastColor = 0;
+        int lastIndex = 0;
+        for (int y = 0; y < h; y++) {
+            int offset = (y0 + y) * width + x0;
+            for (int x = 0; x < w; x++) {
+                int color = pixels[offset + x] | 0xFF000000;
+                if (color != lastColor) {
+                    lastIndex = palette.get(color);
+                    lastColor = color;
+                }
+                row[x] = lastIndex;
+            }
+            raster.setPixels(0, y, w, 1, row);
+        }
+        return image;
+    }
+
+    private IIOMetadata createMetadata(BufferedImage region, int x, int y,
+            boolean firstFrame) throws IIOInvalidTreeException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+                ImageTypeSpecifier.createFromRenderedImage(region), null);
+        IIOMetadataNode root = new IIOMetadataNode(METADATA_FORMAT);
+
+        IIOMetadataNode descriptor = new IIOMetadataNode("ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", Integer.toString(x));
+        descriptor.setAttribute("imageTopPosition", Integer.toString(y));
+        descriptor.setAttribute("imageWidth",
+                Integer.toString(region.getWidth()));
+        descriptor.setAttribute("imageHeight",
+                Integer.toString(region.getHeight()));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+        root.appendChild(descriptor);
+
+        // every region brings its own palette, the writer would use a
+        // default global one otherwise
+        IndexColorModel colorModel = (IndexColorModel) region.getColorModel();
+        IIOMetadataNode colorTable = new IIOMetadataNode("LocalColorTable");
+        colorTable.setAttribute("sizeOfLocalColorTable",
+                Integer.toString(colorModel.getMapSize()));
+        colorTable.setAttribute("sortFlag", "FALSE");
+        for (int i = 0; i < colorModel.getMapSize(); i++) {
+            IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+            entry.setAttribute("index", Integer.toString(i));
+            entry.setAttribute("red", Integer.toString(colorModel.getRed(i)));
+            entry.setAttribute("green", Integer.toString(colorModel.getGreen(i)));
+            entry.setAttribute("blue", Integer.toString(colorModel.getBlue(i)));
+            colorTable.appendChild(entry);
+        }
+        root.appendChild(colorTable);
+
+        // keep the previous frame, the region is drawn over it
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "doNotDispose");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(delay));
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        if (firstFrame) {
+            // loop the animation forever
+            IIOMetadataNode extensions =
+                    new IIOMetadataNode("ApplicationExtensions");
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[]{1, 0, 0});
+            extensions.appendChild(loop);
+            root.appendChild(extensions);
+        }
+        metadata.mergeTree(METADATA_FORMAT, root);
+        return metadata;
+    }
+
+}
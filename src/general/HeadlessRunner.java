@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a single generator from the command line without opening a window
+ * and saves the result as png, for example:
+ *
+ * --generator=wolfram --rule=30 --cells=8001 --out=dir
+ *
+ * Apart from the options below, every --name=value is passed to
+ * GenModel.setParameter(name, value).
+ *
+ * --generator=name   generator to run, see GenRegistry (required)
+ * --out=dir          directory for the images (default: working directory)
+ * --name=file        file name of the image without .png
+ * --frames=true      also save every iteration of animated generators
+ * --gif=file.gif     also save animated generators as animated gif
+ * --gifDelay=ms      time every iteration is shown in the gif (default 100)
+ * --metrics=true     print the GenModelMetrics after the run
+ * --tiled=true       render the image in strips straight into the file,
+ *                    which allows up to 100000 px in each dimension
+ *                    (Wolfram and Random Function Tree generators)
+ * --stripHeight=n    rows per strip in tiled mode (default 64)
+ * --randomSeed=n     seed for generators using randomness, the seed of
+ *                    every run is printed to reproduce its image
+ * --nativeCells=true  draw the cells of Game of Life, Cookie Monster and
+ *                    Wolfram Evolved at 1 px per cell, the saved image
+ *                    still has the full cell size
+ *
+ * Many images can be rendered in parallel on the RenderFarm with
+ *
+ * --jobs=file [--threads=n] [--out=dir]
+ *
+ * where every non-empty line of the file holds the options of one image,
+ * e.g. "--generator=wolfram --rule=30 --name=rule30" (lines starting with #
+ * are ignored).
+ *
+ * @author Moritz Rieger
+ */
+public class HeadlessRunner {
+
+    private final Map<String, String> options;
+
+    private HeadlessRunner(Map<String, String> options) {
+        this.options = options;
+    }
+
+    /**
+     * Checks whether the App was started with command line options for a
+     * headless run instead of the GUI.
+     *
+     * @param args The command line arguments
+     * @return True if no window shall be opened
+     */
+    public static boolean isHeadlessRun(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--generator=") || arg.startsWith("--jobs=")
+                    || arg.equals("--help")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the command line arguments and runs the generator.
+     *
+     * @param args The command line arguments
+     * @return Exit code for the process (0 if the image was saved)
+     */
+    public static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            Map<String, String> options = parseOptions(args);
+            if (options.containsKey("help")) {
+                printUsage();
+                return 0;
+            }
+            if (options.containsKey("jobs")) {
+                return new HeadlessRunner(options).runJobs();
+            }
+            new HeadlessRunner(options).run();
+            return 0;
+        } catch (IllegalArgumentException | IllegalStateException
+                | IOException ex) {
+            System.err.println(ex.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Splits arguments of the form --name=value into a map (in the given
+     * order). A --name without value is stored with the value "true".
+     *
+     * @param args The arguments
+     * @return Map from option name to value
+     */
+    public static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.length() < 3) {
+                throw new IllegalArgumentException("Invalid argument \"" + arg
+                        + "\", expected --name=value.");
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, separator),
+                        arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+    private void run() throws IOException {
+        Map<String, String> parameters = new LinkedHashMap<>(options);
+        String generator = parameters.remove("generator");
+        if (generator == null) {
+            throw new IllegalArgumentException("--generator is missing.");
+        }
+        File outDir = new File(or(parameters.remove("out"), "."));
+        String name = or(parameters.remove("name"), generator);
+        boolean saveFrames = Boolean.parseBoolean(parameters.remove("frames"));
+        boolean printMetrics = Boolean.parseBoolean(parameters.remove("metrics"));
+        String gif = parameters.remove("gif");
+        int gifDelay = Integer.parseInt(or(parameters.remove("gifDelay"), "100"));
+        int stripHeight = Integer.parseInt(or(parameters.remove("stripHeight"),
+                Integer.toString(TiledImageWriter.DEFAULT_STRIP_HEIGHT)));
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + outDir);
+        }
+
+        GenModel model = new RenderJob(generator, parameters, name)
+                .createModel();
+        model.setSavePath(outDir.getPath());
+        if (model instanceof TiledRenderer
+                && ((TiledRenderer) model).isTiled()) {
+            runTiled((TiledRenderer) model, new File(outDir, name + ".png"),
+                    stripHeight);
+            return;
+        }
+        ImageOutputService output = ImageOutputService.getInstance();
+        FrameSink pngSink = !saveFrames ? null : (frame, index) -> {
+            try {
+                // the frame gets reused by the model, so a copy is written
+                output.write(frame.copy(), new File(outDir,
+                        String.format("%s-%05d.png", name, index)))
+                        .exceptionally(ex -> {
+                            System.err.println(ex.getMessage());
+                            return null;
+                        });
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        GifFrameSink gifSink = gif == null ? null
+                : new GifFrameSink(new File(outDir, gif), gifDelay);
+        if (pngSink != null && gifSink != null) {
+            model.setFrameSink((frame, index) -> {
+                pngSink.writeFrame(frame, index);
+                gifSink.writeFrame(frame, index);
+            });
+        } else {
+            model.setFrameSink(gifSink != null ? gifSink : pngSink);
+        }
+
+        // long runs can be watched with JConsole meanwhile
+        model.getMetrics().register();
+        long startTime = System.nanoTime();
+        try {
+            model.generate();
+            model.getMetrics().recordRun(System.nanoTime() - startTime);
+        } finally {
+            if (gifSink != null) {
+                gifSink.close();
+            }
+        }
+        model.saveImage(name);
+        try {
+            output.awaitIdle();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println(String.format("%s: saved %s in %d ms%s",
+                model.getGenName(), new File(outDir, name + ".png"),
+                (System.nanoTime() - startTime) / 1000000,
+                seedText(model)));
+        if (printMetrics) {
+            System.out.println(model.getMetrics());
+        }
+    }
+
+    // The image never exists as a whole, so it is written while rendering
+    private void runTiled(TiledRenderer renderer, File file, int stripHeight)
+            throws IOException {
+        long startTime = System.nanoTime();
+        renderer.startTiles();
+        new TiledImageWriter(stripHeight).write(renderer, file);
+        System.out.println(String.format("%s: saved %s (%d x %d px) in %d ms%s",
+                ((GenModel) renderer).getGenName(), file,
+                renderer.getImageWidth(), renderer.getImageHeight(),
+                (System.nanoTime() - startTime) / 1000000,
+                seedText((GenModel) renderer)));
+    }
+
+    // Tells the seed of a run that used randomness, so it can be repeated
+    private static String seedText(GenModel model) {
+        Long seed = model.getUsedRandomSeed();
+        return seed != null ? " (--randomSeed=" + seed + ")" : "";
+    }
+
+    private int runJobs() throws IOException {
+        File outDir = new File(or(options.get("out"), "."));
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + outDir);
+        }
+        List<RenderJob> jobs = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(options.get("jobs")))) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                jobs.add(RenderJob.fromOptions(parseOptions(line.split("\\s+"))));
+            }
+        }
+        RenderFarm farm = options.containsKey("threads")
+                ? new RenderFarm(Integer.parseInt(options.get("threads")))
+                : new RenderFarm();
+        farm.setProgressListener((job, model, done, total, imagesPerSecond)
+                -> System.out.println(String.format("[%d/%d] %s "
+                        + "(%.2f images/s)", done, total, job,
+                        imagesPerSecond)));
+        List<String> errors;
+        try {
+            errors = farm.render(jobs, outDir);
+            // images for the DiskRenderCache may still be written
+            ImageOutputService.getInstance().awaitIdle();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        for (String error : errors) {
+            System.err.println(error);
+        }
+        return errors.isEmpty() ? 0 : 1;
+    }
+
+    private static String or(String value, String defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: --generator=name [--out=dir] [--name=file]"
+                + " [--frames=true] [--gif=file.gif] [--gifDelay=ms] [--metrics=true]"
+                + " [--tiled=true] [--stripHeight=n] [--randomSeed=n]"
+                + " [--parameter=value ...]");
+        System.out.println("       --jobs=file [--threads=n] [--out=dir]"
+                + "  (one line of options per image)");
+        System.out.println("Generators: " + GenRegistry.getNames());
+        System.out.println("Parameters are the setters of the generator, "
+                + "e.g. --rule=30 for setRule(30).");
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.imageio.ImageIO;
+
+/**
+ * Writes images to png files on a pool of encoder threads, so that the
+ * generators can go on while the pngs are compressed. The number of images
+ * waiting or being encoded is bounded: write() only blocks when it is
+ * reached, which also bounds the memory held by pending images.
+ *
+ * The number of encoder threads can be set with the system property
+ * "propra.output.threads" (default: half the cores), the number of images
+ * that may wait for a free encoder with "propra.output.queue" (default: the
+ * number of encoder threads) and the deflate level of pngs written from
+ * PixelBuffers with "propra.output.compression" (0 to 9, default 6).
+ *
+ * @author Moritz Rieger
+ */
+public class ImageOutputService {
+
+    public static final String THREADS_PROPERTY = "propra.output.threads";
+    public static final String QUEUE_PROPERTY = "propra.output.queue";
+    public static final String COMPRESSION_PROPERTY = "propra.output.compression";
+
+    private static ImageOutputService instance;
+
+    private final ThreadPoolExecutor encoders;
+    private final int capacity;
+    private final Semaphore slots; // one per image waiting or being encoded
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final PngEncoder pngEncoder;
+
+    private ImageOutputService(int threads, int queueSize,
+            int compressionLevel) {
+        pngEncoder = new PngEncoder(compressionLevel);
+        capacity = threads + queueSize;
+        // fair, so that awaitIdle() is not overtaken by new images forever
+        slots = new Semaphore(capacity, true);
+        encoders = new ThreadPoolExecutor(threads, threads, 1,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                // no daemon, images that are saved when the App gets closed
+                // shall still be written
+                return new Thread(runnable,
+                        "image-output-" + threadCount.incrementAndGet());
+            }
+        });
+        encoders.allowCoreThreadTimeOut(true); // no idle threads
+    }
+
+    /**
+     * Returns the service shared by the whole App, it is created with the
+     * settings from the system properties on first use.
+     *
+     * @return The shared ImageOutputService
+     */
+    public static synchronized ImageOutputService getInstance() {
+        if (instance == null) {
+            int threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY,
+                    Runtime.getRuntime().availableProcessors() / 2));
+            int queueSize = Math.max(0, Integer.getInteger(QUEUE_PROPERTY,
+                    threads));
+            instance = new ImageOutputService(threads, queueSize,
+                    Integer.getInteger(COMPRESSION_PROPERTY, -1));
+        }
+        return instance;
+    }
+
+    /**
+     * Queues an image to be written as png by the PngEncoder. The image must
+     * not be changed afterwards, pass a copy if it gets drawn on again.
+     *
+     * @param image The image
+     * @param file The png file
+     * @return Completes with the file when it is written, or exceptionally
+     * with the IOException if writing failed
+     * @throws InterruptedException If the caller got interrupted while
+     * waiting for a free place in the queue
+     */
+    public CompletableFuture<File> write(PixelBuffer image, File file)
+            throws InterruptedException {
+        slots.acquire();
+        return submit(() -> pngEncoder.write(image, file), file);
+    }
+
+    /**
+     * Queues an image that is drawn on the encoder thread before it is
+     * written like write(PixelBuffer, File), e.g. a native cell frame that
+     * is drawn again at full size.
+     *
+     * @param image Draws the image
+     * @param file The png file
+     * @return Completes with the file when it is written, or exceptionally
+     * if drawing or writing failed
+     * @throws InterruptedException If the caller got interrupted while
+     * waiting for a free place in the queue
+     */
+    public CompletableFuture<File> write(Supplier<PixelBuffer> image,
+            File file) throws InterruptedException {
+        slots.acquire();
+        return submit(() -> pngEncoder.write(image.get(), file), file);
+    }
+
+    /**
+     * Queues an image like write(Supplier, File), but never waits, e.g. on
+     * the JavaFX Application Thread.
+     *
+     * @param image Draws the image
+     * @param file The png file
+     * @return Completes with the file when it is written, or null if the
+     * queue is full and the image was not queued
+     */
+    public CompletableFuture<File> tryWrite(Supplier<PixelBuffer> image,
+            File file) {
+        if (!slots.tryAcquire()) {
+            return null;
+        }
+        return submit(() -> pngEncoder.write(image.get(), file), file);
+    }
+
+    /**
+     * Queues an image that is not available as PixelBuffer to be written as
+     * png by ImageIO. The image must not be changed afterwards.
+     *
+     * @param image The image
+     * @param file The png file
+     * @return Completes with the file when it is written, or exceptionally
+     * with the IOException if writing failed
+     * @throws InterruptedException If the caller got interrupted while
+     * waiting for a free place in the queue
+     */
+    public CompletableFuture<File> write(RenderedImage image, File file)
+            throws InterruptedException {
+        slots.acquire();
+        return submit(() -> ImageIO.write(image, "png", file), file);
+    }
+
+    /**
+     * Runs another kind of file output on the encoder threads, e.g. the
+     * writes of the DiskRenderCache, so that it shares their bounded queue.
+     * Never waits.
+     *
+     * @param output Writes the file and handles its own errors
+     * @return False if the queue is full and the output was not queued
+     */
+    boolean tryExecute(Runnable output) {
+        if (!slots.tryAcquire()) {
+            return false;
+        }
+        submit(output::run, null);
+        return true;
+    }
+
+    private interface Encoding {
+
+        void run() throws IOException;
+    }
+
+    // the caller has acquired a slot already
+    private CompletableFuture<File> submit(Encoding encoding, File file) {
+        CompletableFuture<File> written = new CompletableFuture<>();
+        try {
+            encoders.execute(() -> {
+                try {
+                    encoding.run();
+                    written.complete(file);
+                } catch (IOException | RuntimeException ex) {
+                    written.completeExceptionally(ex);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException ex) {
+            slots.release();
+            throw ex;
+        }
+        return written;
+    }
+
+    /**
+     * Blocks until all queued images are written, e.g. before the process
+     * exits.
+     *
+     * @throws InterruptedException If the caller got interrupted
+     */
+    public void awaitIdle() throws InterruptedException {
+        slots.acquire(capacity);
+        slots.release(capacity);
+    }
+
+    /**
+     * @return Number of images that are waiting or being encoded
+     */
+    public int getPendingImages() {
+        return capacity - slots.availablePermits();
+    }
+
+}
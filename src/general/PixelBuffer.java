@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * A render target that is backed by a plain int[] of ARGB pixels instead of
+ * a JavaFX Canvas. A GenModel can draw into it on any thread without the
+ * JavaFX toolkit; the pixels are only copied onto a Canvas or WritableImage
+ * when they actually get displayed, and can be handed to ImageIO without
+ * taking a snapshot first.
+ *
+ * @author Moritz Rieger
+ */
+public class PixelBuffer {
+
+    private final int width;
+    private final int height;
+    private final int[] pixels; // row by row, pixel (x,y) at y * width + x
+
+    public PixelBuffer(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("A PixelBuffer needs a width and height of at least 1 px.");
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gives direct access to the pixels, e.g. to write whole rows at once.
+     *
+     * @return The backing ARGB array (no copy)
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Creates an independent copy, e.g. to hand the pixels to another thread
+     * while this buffer gets drawn on again.
+     *
+     * @return A new PixelBuffer with the same pixels
+     */
+    public PixelBuffer copy() {
+        PixelBuffer copy = new PixelBuffer(width, height);
+        System.arraycopy(pixels, 0, copy.pixels, 0, pixels.length);
+        return copy;
+    }
+
+    /**
+     * Enlarges the buffer by an integer factor without smoothing, every
+     * pixel becomes a square of factor x factor pixels.
+     *
+     * @param factor Width of the squares in px
+     * @return A new PixelBuffer that is factor times as wide and high
+     */
+    public PixelBuffer scaled(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("The factor has to be at least 1.");
+        }
+        PixelBuffer scaled = new PixelBuffer(width * factor, height * factor);
+        int scaledWidth = scaled.width;
+        for (int row = 0; row < height; row++) {
+            int offset = row * factor * scaledWidth;
+            for (int col = 0; col < width; col++) {
+                Arrays.fill(scaled.pixels, offset + col * factor,
+                        offset + (col + 1) * factor, pixels[row * width + col]);
+            }
+            // the other rows of the squares are the same
+            for (int i = 1; i < factor; i++) {
+                System.arraycopy(scaled.pixels, offset, scaled.pixels,
+                        offset + i * scaledWidth, scaledWidth);
+            }
+        }
+        return scaled;
+    }
+
+    public int getPixel(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    public void setPixel(int x, int y, int argb) {
+        pixels[y * width + x] = argb;
+    }
+
+    /**
+     * Fills the whole buffer with a single colour, e.g. the background.
+     *
+     * @param argb The colour as ARGB int
+     */
+    public void fill(int argb) {
+        Arrays.fill(pixels, argb);
+    }
+
+    /**
+     * Fills a rectangle, the parts outside of the buffer are clipped.
+     *
+     * @param x Left edge in px
+     * @param y Upper edge in px
+     * @param w Width in px
+     * @param h Height in px
+     * @param argb The colour as ARGB int
+     */
+    public void fillRect(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, width);
+        int y1 = Math.min(y + h, height);
+        for (int row = y0; row < y1; row++) {
+            int offset = row * width;
+            Arrays.fill(pixels, offset + x0, offset + x1, argb);
+        }
+    }
+
+    /**
+     * Fills the oval inscribed in the given bounding box. A pixel is set when
+     * its center lies inside the oval, the parts outside of the buffer are
+     * clipped.
+     *
+     * @param x Left edge of the bounding box
+     * @param y Upper edge of the bounding box
+     * @param w Width of the bounding box
+     * @param h Height of the bounding box
+     * @param argb The colour as ARGB int
+     */
+    public void fillOval(double x, double y, double w, double h, int argb) {
+        double rx = w / 2;
+        double ry = h / 2;
+        double cx = x + rx;
+        double cy = y + ry;
+        int y0 = Math.max((int) Math.floor(y), 0);
+        int y1 = Math.min((int) Math.ceil(y + h), height);
+        for (int row = y0; row < y1; row++) {
+            double dy = (row + 0.5 - cy) / ry;
+            double remaining = 1 - dy * dy;
+            if (remaining < 0) {
+                continue;
+            }
+            // half width of the oval in this row
+            double dx = rx * Math.sqrt(remaining);
+            int x0 = Math.max((int) Math.ceil(cx - dx - 0.5), 0);
+            int x1 = Math.min((int) Math.floor(cx + dx - 0.5) + 1, width);
+            if (x0 < x1) {
+                Arrays.fill(pixels, row * width + x0,
+                        row * width + x1, argb);
+            }
+        }
+    }
+
+    /**
+     * Copies all pixels with a single call to the given PixelWriter.
+     *
+     * @param pixelWriter PixelWriter of a Canvas or WritableImage that is at
+     * least as big as this buffer
+     */
+    public void writeTo(PixelWriter pixelWriter) {
+        pixelWriter.setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(), pixels, 0, width);
+    }
+
+    /**
+     * Copies the pixels onto a Canvas so that they can be displayed. Has to be
+     * called from the JavaFX Application Thread.
+     *
+     * @param reuse A Canvas that was returned by an earlier call, it will be
+     * drawn on again if it has the right size (can be null)
+     * @return A Canvas showing the content of this buffer
+     */
+    public Canvas toCanvas(Canvas reuse) {
+        Canvas canvas = reuse;
+        if (canvas == null || canvas.getWidth() != width
+                || canvas.getHeight() != height) {
+            canvas = new Canvas(width, height);
+        }
+        writeTo(canvas.getGraphicsContext2D().getPixelWriter());
+        return canvas;
+    }
+
+    /**
+     * Copies the pixels into a new WritableImage.
+     *
+     * @return An image showing the content of this buffer
+     */
+    public WritableImage toImage() {
+        WritableImage image = new WritableImage(width, height);
+        writeTo(image.getPixelWriter());
+        return image;
+    }
+
+    /**
+     * Copies the pixels of a JavaFX Image into a new PixelBuffer, e.g. a
+     * snapshot of a Canvas that shall be written as png.
+     *
+     * @param image The image to copy
+     * @return A new PixelBuffer with the pixels of the image
+     */
+    public static PixelBuffer fromImage(Image image) {
+        PixelBuffer buffer = new PixelBuffer((int) image.getWidth(),
+                (int) image.getHeight());
+        image.getPixelReader().getPixels(0, 0, buffer.width, buffer.height,
+                PixelFormat.getIntArgbInstance(), buffer.pixels, 0,
+                buffer.width);
+        return buffer;
+    }
+
+    /**
+     * Wraps the pixels into a BufferedImage without copying them, so that the
+     * buffer can be written with ImageIO directly. Changes to this buffer are
+     * visible in the returned image.
+     *
+     * @return A BufferedImage sharing the pixels of this buffer
+     */
+    public BufferedImage toBufferedImage() {
+        DataBufferInt dataBuffer = new DataBufferInt(pixels, pixels.length);
+        ColorModel colorModel = ColorModel.getRGBdefault(); // ARGB, 8 bit each
+        WritableRaster raster = Raster.createPackedRaster(dataBuffer, width,
+                height, width, new int[]{0x00FF0000, 0x0000FF00, 0x000000FF,
+                    0xFF000000}, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * Converts a JavaFX Color to an ARGB int as used by this buffer.
+     *
+     * @param color The color to convert
+     * @return The color as ARGB int
+     */
+    public static int toArgb(Color color) {
+        int a = (int) Math.round(color.getOpacity() * 255);
+        int r = (int) Math.round(color.getRed() * 255);
+        int g = (int) Math.round(color.getGreen() * 255);
+        int b = (int) Math.round(color.getBlue() * 255);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+}
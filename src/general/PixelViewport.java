@@ -0,0 +1,274 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.Arrays;
+import javafx.geometry.Orientation;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+
+/**
+ * Displays a PixelBuffer of any size. Instead of copying the whole buffer
+ * into a Canvas (an 8001 x 4000 px image is a texture of 128 MB), only the
+ * visible part is sampled at the current zoom into an image of the size of
+ * the viewport. Its memory therefore only depends on the size of the window.
+ *
+ * Dragging or the mouse wheel moves the image, the mouse wheel with Ctrl
+ * pressed zooms around the mouse pointer. Has to be used on the JavaFX
+ * Application Thread.
+ *
+ * @author Moritz Rieger
+ */
+public class PixelViewport extends Region {
+
+    public static final double MIN_ZOOM = 1.0 / 64;
+    public static final double MAX_ZOOM = 64;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int BACKGROUND = 0xFFF4F4F4;
+
+    private final ImageView surface = new ImageView();
+    private final ScrollBar horizontalBar = new ScrollBar();
+    private final ScrollBar verticalBar = new ScrollBar();
+    private WritableImage surfaceImage;
+    private int[] surfacePixels = new int[0];
+    // image pixel of every display column and row, -1 outside the image
+    private int[] sourceColumns = new int[0];
+    private int[] sourceRows = new int[0];
+
+    private PixelBuffer image;
+    private double zoom = 1;
+    private boolean dirty;
+    private double dragX;
+    private double dragY;
+
+    public PixelViewport() {
+        verticalBar.setOrientation(Orientation.VERTICAL);
+        // the scroll bars hold the offset of the view in display pixels
+        horizontalBar.valueProperty().addListener(o -> invalidate());
+        verticalBar.valueProperty().addListener(o -> invalidate());
+        getChildren().addAll(surface, horizontalBar, verticalBar);
+        setMinSize(0, 0);
+        setPrefSize(0, 0); // takes whatever space it gets
+
+        setOnMousePressed((MouseEvent e) -> {
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        setOnMouseDragged((MouseEvent e) -> {
+            scrollBy(dragX - e.getX(), dragY - e.getY());
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        setOnScroll((ScrollEvent e) -> {
+            if (e.isControlDown()) {
+                setZoom(e.getDeltaY() > 0 ? zoom * ZOOM_STEP : zoom / ZOOM_STEP,
+                        e.getX(), e.getY());
+            } else {
+                scrollBy(-e.getDeltaX(), -e.getDeltaY());
+            }
+            e.consume();
+        });
+    }
+
+    /**
+     * Shows a new image. If it has the same size as the one before (e.g. the
+     * next iteration of an animation), zoom and position are kept. The
+     * buffer must not be changed while it is shown, see
+     * GenModel.swapDisplayedFrame().
+     *
+     * @param image The image to show
+     */
+    public void setImage(PixelBuffer image) {
+        setImage(image, 1);
+    }
+
+    /**
+     * Shows a new image like setImage(PixelBuffer), but starts at the given
+     * zoom if the size changed, e.g. to enlarge frames drawn at one pixel
+     * per cell.
+     *
+     * @param image The image to show
+     * @param initialZoom Display pixels per image pixel for a new size,
+     * limited to MIN_ZOOM and MAX_ZOOM
+     */
+    public void setImage(PixelBuffer image, double initialZoom) {
+        if (this.image == null || image.getWidth() != this.image.getWidth()
+                || image.getHeight() != this.image.getHeight()) {
+            zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, initialZoom));
+            horizontalBar.setValue(0);
+            verticalBar.setValue(0);
+        }
+        this.image = image;
+        invalidate();
+    }
+
+    public PixelBuffer getImage() {
+        return image;
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Zooms around a point of the viewport, which keeps showing the same
+     * pixel of the image.
+     *
+     * @param newZoom Display pixels per image pixel, limited to MIN_ZOOM and
+     * MAX_ZOOM
+     * @param x Horizontal position in the viewport
+     * @param y Vertical position in the viewport
+     */
+    public void setZoom(double newZoom, double x, double y) {
+        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+        double factor = newZoom / zoom;
+        zoom = newZoom;
+        updateScrollBars();
+        horizontalBar.setValue(clamp(horizontalBar,
+                (horizontalBar.getValue() + x) * factor - x));
+        verticalBar.setValue(clamp(verticalBar,
+                (verticalBar.getValue() + y) * factor - y));
+        invalidate();
+    }
+
+    private void scrollBy(double dx, double dy) {
+        horizontalBar.setValue(clamp(horizontalBar,
+                horizontalBar.getValue() + dx));
+        verticalBar.setValue(clamp(verticalBar, verticalBar.getValue() + dy));
+    }
+
+    private static double clamp(ScrollBar bar, double value) {
+        return Math.max(bar.getMin(), Math.min(bar.getMax(), value));
+    }
+
+    // Redrawing is done once per pulse in layoutChildren(), no matter how
+    // many events arrived before
+    private void invalidate() {
+        if (!dirty) {
+            dirty = true;
+            requestLayout();
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        updateScrollBars();
+        double barWidth = verticalBar.isVisible()
+                ? verticalBar.prefWidth(-1) : 0;
+        double barHeight = horizontalBar.isVisible()
+                ? horizontalBar.prefHeight(-1) : 0;
+        int width = (int) Math.max(1, getWidth() - barWidth);
+        int height = (int) Math.max(1, getHeight() - barHeight);
+        horizontalBar.resizeRelocate(0, height, width, barHeight);
+        verticalBar.resizeRelocate(width, 0, barWidth, height);
+        if (surfaceImage == null || surfaceImage.getWidth() != width
+                || surfaceImage.getHeight() != height) {
+            surfaceImage = new WritableImage(width, height);
+            surfacePixels = new int[width * height];
+            surface.setImage(surfaceImage);
+            dirty = true;
+        }
+        if (dirty) {
+            dirty = false;
+            redraw(width, height);
+        }
+    }
+
+    private void updateScrollBars() {
+        double imageWidth = image == null ? 0 : image.getWidth() * zoom;
+        double imageHeight = image == null ? 0 : image.getHeight() * zoom;
+        // the bars take space from each other
+        boolean horizontal = imageWidth > getWidth();
+        boolean vertical = imageHeight > getHeight()
+                - (horizontal ? horizontalBar.prefHeight(-1) : 0);
+        horizontal = imageWidth > getWidth()
+                - (vertical ? verticalBar.prefWidth(-1) : 0);
+        double viewWidth = getWidth()
+                - (vertical ? verticalBar.prefWidth(-1) : 0);
+        double viewHeight = getHeight()
+                - (horizontal ? horizontalBar.prefHeight(-1) : 0);
+        setRange(horizontalBar, horizontal, imageWidth - viewWidth, viewWidth);
+        setRange(verticalBar, vertical, imageHeight - viewHeight, viewHeight);
+    }
+
+    private static void setRange(ScrollBar bar, boolean visible, double max,
+            double visibleAmount) {
+        bar.setVisible(visible);
+        bar.setMax(Math.max(0, max));
+        bar.setVisibleAmount(visibleAmount);
+        bar.setUnitIncrement(16);
+        bar.setBlockIncrement(visibleAmount * 0.9);
+        if (bar.getValue() > bar.getMax()) {
+            bar.setValue(bar.getMax());
+        }
+    }
+
+    // Samples the visible part of the image with nearest neighbour, which
+    // keeps single cells sharp when zoomed in
+    private void redraw(int width, int height) {
+        if (image == null) {
+            Arrays.fill(surfacePixels, BACKGROUND);
+        } else {
+            sourceColumns = sourceIndices(sourceColumns, width,
+                    horizontalBar.getValue(), image.getWidth());
+            sourceRows = sourceIndices(sourceRows, height,
+                    verticalBar.getValue(), image.getHeight());
+            int[] pixels = image.getPixels();
+            int imageWidth = image.getWidth();
+            for (int y = 0; y < height; y++) {
+                int target = y * width;
+                int row = sourceRows[y];
+                if (row < 0) {
+                    Arrays.fill(surfacePixels, target,
+                            target + width, BACKGROUND);
+                    continue;
+                }
+                int source = row * imageWidth;
+                for (int x = 0; x < width; x++) {
+                    int column = sourceColumns[x];
+                    surfacePixels[target + x] = column < 0 ? BACKGROUND
+                            : pixels[source + column];
+                }
+            }
+        }
+        surfaceImage.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(), surfacePixels, 0, width);
+    }
+
+    private int[] sourceIndices(int[] reuse, int length, double offset,
+            int imageLength) {
+        int[] indices = reuse.length == length ? reuse : new int[length];
+        for (int i = 0; i < length; i++) {
+            int index = (int) Math.floor((offset + i) / zoom);
+            indices[i] = index < imageLength ? index : -1;
+        }
+        return indices;
+    }
+
+}
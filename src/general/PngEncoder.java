@@ -0,0 +1,486 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PixelBuffer as png straight from its int array, without
+ * converting it into a BufferedImage first. Pictures with at most 256
+ * colors (e.g. the two colors of Wolfram or the states of Cookie Monster)
+ * are written with a palette and 1, 2, 4 or 8 bits per pixel, all others as
+ * RGB or RGBA. The rows are compressed one after another, so apart from the
+ * pixels only a few rows are held in memory.
+ *
+ * @author Moritz Rieger
+ */
+public class PngEncoder {
+
+    private static final byte[] SIGNATURE =
+            {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int IDAT_SIZE = 65536;
+
+    private final int compressionLevel;
+
+    /**
+     * Creates an encoder with the default compression level.
+     */
+    public PngEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates an encoder.
+     *
+     * @param compressionLevel 0 (fastest, no compression) to 9 (smallest
+     * files) or -1 for the default of the Deflater
+     */
+    public PngEncoder(int compressionLevel) {
+        if (compressionLevel < -1 || compressionLevel > 9) {
+            throw new IllegalArgumentException("The compression level has to be between 0 and 9 (or -1 for the default).");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Writes the image to a png file.
+     *
+     * @param image The image
+     * @param file The png file
+     * @throws IOException If the file cannot be written
+     */
+    public void write(PixelBuffer image, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file), IDAT_SIZE)) {
+            write(image, out);
+        }
+    }
+
+    /**
+     * Writes the image as png to a stream, the stream is not closed.
+     *
+     * @param image The image
+     * @param stream The stream
+     * @throws IOException If the stream cannot be written
+     */
+    public void write(PixelBuffer image, OutputStream stream)
+            throws IOException {
+        int[] pixels = image.getPixels();
+        Palette palette = Palette.of(pixels);
+        try (StripWriter writer = new StripWriter(stream, image.getWidth(),
+                image.getHeight(), palette,
+                palette == null && hasAlpha(pixels))) {
+            writer.writeRows(image);
+            writer.finish();
+        }
+    }
+
+    /**
+     * Starts a png whose rows are handed over strip by strip, so the whole
+     * picture never has to be in memory. Because the header comes first,
+     * the colors have to be known in advance: with at most 256 colors they
+     * are written as palette, otherwise the picture is stored as RGB (or
+     * RGBA if alpha is true).
+     *
+     * @param stream The stream, it is not closed
+     * @param width The width of the picture
+     * @param height The height of the picture
+     * @param colors All colors that will occur or null if they are unknown
+     * @param alpha true if the colors may be transparent
+     * @return The writer for the rows
+     * @throws IOException If the stream cannot be written
+     */
+    public StripWriter start(OutputStream stream, int width, int height,
+            int[] colors, boolean alpha) throws IOException {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("The picture has to be at least 1x1 pixels.");
+        }
+        Palette palette = colors == null ? null : Palette.of(colors);
+        return new StripWriter(stream, width, height, palette, alpha);
+    }
+
+    /**
+     * Compresses the rows of a png as they come in. The strips have to cover
+     * the picture from top to bottom, finish() writes the end of the file.
+     */
+    public class StripWriter implements Closeable {
+
+        private final DataOutputStream out;
+        private final int width;
+        private final int height;
+        private final Palette palette;
+        private final int bitDepth;
+        private final int bytesPerPixel;
+        private final Deflater deflater;
+        private final DeflaterOutputStream data;
+        private int rowsWritten;
+
+        private StripWriter(OutputStream stream, int width, int height,
+                Palette palette, boolean alpha) throws IOException {
+            this.out = new DataOutputStream(stream);
+            this.width = width;
+            this.height = height;
+            this.palette = palette;
+            out.write(SIGNATURE);
+
+            int depth = 8;
+            int colorType;
+            if (palette != null) {
+                colorType = COLOR_TYPE_PALETTE;
+                while (depth > 1 && palette.size() <= 1 << (depth / 2)) {
+                    depth /= 2;
+                }
+            } else {
+                colorType = alpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB;
+            }
+            bitDepth = depth;
+            bytesPerPixel = colorType == COLOR_TYPE_RGBA ? 4 : 3;
+
+            Chunk header = new Chunk("IHDR", 13);
+            header.writeInt(width);
+            header.writeInt(height);
+            header.write(bitDepth);
+            header.write(colorType);
+            header.write(0); // deflate
+            header.write(0); // adaptive filtering
+            header.write(0); // no interlace
+            header.writeTo(out);
+            if (palette != null) {
+                palette.writeTo(out);
+            }
+            deflater = new Deflater(compressionLevel);
+            data = new DeflaterOutputStream(
+                    new IdatOutputStream(out), deflater, IDAT_SIZE);
+        }
+
+        /**
+         * Appends all rows of the strip below the rows written so far.
+         *
+         * @param strip A strip with the width of the picture
+         * @throws IOException If the stream cannot be written
+         */
+        public void writeRows(PixelBuffer strip) throws IOException {
+            if (strip.getWidth() != width) {
+                throw new IllegalArgumentException("The strip has to be as wide as the picture.");
+            }
+            if (rowsWritten + strip.getHeight() > height) {
+                throw new IllegalArgumentException("The strip does not fit into the picture.");
+            }
+            if (palette != null) {
+                writeIndexedRows(data, strip.getPixels(), width,
+                        strip.getHeight(), palette, bitDepth);
+            } else {
+                writeColorRows(data, strip.getPixels(), width,
+                        strip.getHeight(), bytesPerPixel);
+            }
+            rowsWritten += strip.getHeight();
+        }
+
+        /**
+         * @return The number of rows written so far
+         */
+        public int getRowsWritten() {
+            return rowsWritten;
+        }
+
+        /**
+         * Writes the remaining compressed data and the end of the file.
+         *
+         * @throws IOException If not all rows were written or the stream
+         * cannot be written
+         */
+        public void finish() throws IOException {
+            if (rowsWritten != height) {
+                throw new IOException("Only " + rowsWritten + " of " + height + " rows were written.");
+            }
+            data.finish();
+            data.flush();
+            new Chunk("IEND", 0).writeTo(out);
+            out.flush();
+        }
+
+        /**
+         * Releases the deflater, the stream is not closed.
+         */
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+
+    private static boolean hasAlpha(int[] pixels) {
+        for (int pixel : pixels) {
+            if (pixel >>> 24 != 0xFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Palette indices are packed into the bytes starting with the highest
+    // bits. Rows are not filtered, as recommended for palette images.
+    private static void writeIndexedRows(OutputStream out, int[] pixels,
+            int width, int height, Palette palette, int bitDepth)
+            throws IOException {
+        int pixelsPerByte = 8 / bitDepth;
+        byte[] row = new byte[1 + (width + pixelsPerByte - 1) / pixelsPerByte];
+        row[0] = FILTER_NONE;
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            int current = 0;
+            int position = 1;
+            int bits = 0;
+            for (int x = 0; x < width; x++) {
+                int index = palette.indexOf(pixels[offset + x]);
+                if (index < 0) {
+                    throw new IllegalArgumentException(String.format(
+                            "The color #%08X is not in the palette.",
+                            pixels[offset + x]));
+                }
+                current = current << bitDepth | index;
+                bits += bitDepth;
+                if (bits == 8) {
+                    row[position++] = (byte) current;
+                    current = 0;
+                    bits = 0;
+                }
+            }
+            if (bits > 0) {
+                row[position] = (byte) (current << (8 - bits));
+            }
+            out.write(row);
+        }
+    }
+
+    // Every byte is stored as difference to the same byte of the pixel to
+    // the left (filter "Sub"), which makes gradients compress a lot better.
+    private static void writeColorRows(OutputStream out, int[] pixels,
+            int width, int height, int bytesPerPixel) throws IOException {
+        byte[] row = new byte[1 + width * bytesPerPixel];
+        row[0] = FILTER_SUB;
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            int previous = 0; // pixel left of the row counts as 0
+            for (int x = 0, i = 1; x < width; x++) {
+                int pixel = pixels[offset + x];
+                row[i++] = (byte) ((pixel >> 16) - (previous >> 16));
+                row[i++] = (byte) ((pixel >> 8) - (previous >> 8));
+                row[i++] = (byte) (pixel - previous);
+                if (bytesPerPixel == 4) {
+                    row[i++] = (byte) ((pixel >>> 24) - (previous >>> 24));
+                }
+                previous = pixel;
+            }
+            out.write(row);
+        }
+    }
+
+    /**
+     * The colors of a picture with at most 256 colors and a fast lookup of
+     * their indices.
+     */
+    private static class Palette {
+
+        private static final int MAX_COLORS = 256;
+        private static final int TABLE_SIZE = 1024; // power of two
+
+        private final int[] colors = new int[MAX_COLORS];
+        private int size;
+        // open addressing hash table from color to index + 1 (0 = empty)
+        private final int[] keys = new int[TABLE_SIZE];
+        private final int[] values = new int[TABLE_SIZE];
+        private int lastColor;
+        private int lastIndex = -1;
+
+        /**
+         * @return The palette of the pixels or null if there are more than
+         * 256 colors
+         */
+        static Palette of(int[] pixels) {
+            Palette palette = new Palette();
+            for (int pixel : pixels) {
+                if (palette.lookup(pixel, true) < 0) {
+                    return null;
+                }
+            }
+            return palette;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int indexOf(int color) {
+            return lookup(color, false);
+        }
+
+        // neighbouring pixels mostly have the same color, so the last one
+        // is checked before the table
+        private int lookup(int color, boolean add) {
+            if (color == lastColor && lastIndex >= 0) {
+                return lastIndex;
+            }
+            int slot = (color * 0x9E3779B9) >>> 22; // 10 bits for 1024 slots
+            while (values[slot] != 0 && keys[slot] != color) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            if (values[slot] == 0) {
+                if (!add || size == MAX_COLORS) {
+                    return -1;
+                }
+                colors[size] = color;
+                keys[slot] = color;
+                values[slot] = ++size;
+            }
+            lastColor = color;
+            lastIndex = values[slot] - 1;
+            return lastIndex;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            Chunk palette = new Chunk("PLTE", size * 3);
+            boolean transparent = false;
+            for (int i = 0; i < size; i++) {
+                palette.write(colors[i] >> 16);
+                palette.write(colors[i] >> 8);
+                palette.write(colors[i]);
+                transparent |= colors[i] >>> 24 != 0xFF;
+            }
+            palette.writeTo(out);
+            if (transparent) {
+                Chunk alpha = new Chunk("tRNS", size);
+                for (int i = 0; i < size; i++) {
+                    alpha.write(colors[i] >>> 24);
+                }
+                alpha.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * A small chunk that is assembled in memory.
+     */
+    private static class Chunk {
+
+        private final byte[] data;
+        private final String type;
+        private int position;
+
+        Chunk(String type, int length) {
+            this.type = type;
+            this.data = new byte[length];
+        }
+
+        void write(int b) {
+            data[position++] = (byte) b;
+        }
+
+        void writeInt(int value) {
+            write(value >> 24);
+            write(value >> 16);
+            write(value >> 8);
+            write(value);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            writeChunk(out, type, data, data.length);
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type,
+            byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Splits the compressed data into IDAT chunks.
+     */
+    private static class IdatOutputStream extends FilterOutputStream {
+
+        private final byte[] buffer = new byte[IDAT_SIZE];
+        private int count;
+
+        IdatOutputStream(DataOutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+            out.flush();
+        }
+
+        private void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk((DataOutputStream) out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.SplittableRandom;
+
+/**
+ * The randomness of a run of generate(), reproducible from a single seed.
+ * Instead of one shared generator, every part of the work asks for its own
+ * stream by an index (e.g. the row of a grid), so rows can be filled in
+ * parallel or in any order and still get the same numbers. Streams with
+ * different indices or purposes are statistically independent.
+ *
+ * GenModels get a RandomSource with startRandomSource(), which uses the
+ * seed set with setRandomSeed() or a new one for every run.
+ *
+ * @author Moritz Rieger
+ */
+public final class RandomSource {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final SplittableRandom SEEDS = new SplittableRandom();
+
+    private final long seed;
+
+    public RandomSource(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return A seed that differs on every call
+     */
+    public static synchronized long newSeed() {
+        return SEEDS.nextLong();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * The stream with the given index, which is the same for the same seed
+     * and index. A stream must only be used by one thread.
+     *
+     * @param index E.g. the row the stream is used for
+     * @return A new generator for that stream
+     */
+    public SplittableRandom stream(long index) {
+        return new SplittableRandom(mix64(seed + (index + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * A source for a different purpose within the same run, e.g. the colors
+     * of the states, so that its streams do not overlap with the streams of
+     * the cells.
+     *
+     * @param purpose Name of the purpose
+     * @return A source with a seed derived from this one
+     */
+    public RandomSource derive(String purpose) {
+        return new RandomSource(mix64(seed ^ mix64(purpose.hashCode())));
+    }
+
+    // finalizer of SplitMix64, spreads neighbouring values over all bits
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
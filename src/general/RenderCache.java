@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the finished images of the last renders in memory, so that pressing
+ * Generate again with the same parameters shows the image instantly. Images
+ * are found by a fingerprint of the generator and its parameters (see
+ * GenModel.getParameterFingerprint()). When the images need more than the
+ * heap budget, the least recently used ones are dropped.
+ *
+ * The budget in bytes can be set with the system property
+ * "propra.cache.bytes" (default: an eighth of the maximum heap, 0 disables
+ * the cache).
+ *
+ * @author Moritz Rieger
+ */
+public class RenderCache {
+
+    public static final String BYTES_PROPERTY = "propra.cache.bytes";
+
+    private static RenderCache instance;
+
+    private final long budgetBytes;
+    // in access order, the least recently used image comes first
+    private final LinkedHashMap<String, PixelBuffer> images =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache.
+     *
+     * @param budgetBytes Maximum number of bytes of all cached images
+     */
+    public RenderCache(long budgetBytes) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("The budget of a RenderCache must not be negative.");
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns the cache shared by all GenModels, it is created with the
+     * budget from the system property on first use.
+     *
+     * @return The shared RenderCache
+     */
+    public static synchronized RenderCache getInstance() {
+        if (instance == null) {
+            instance = new RenderCache(Long.getLong(BYTES_PROPERTY,
+                    Runtime.getRuntime().maxMemory() / 8));
+        }
+        return instance;
+    }
+
+    /**
+     * Looks up a rendered image. The image is shared with the cache and must
+     * not be drawn on.
+     *
+     * @param fingerprint The fingerprint of generator and parameters
+     * @return The image or null if it is not cached
+     */
+    public synchronized PixelBuffer get(String fingerprint) {
+        PixelBuffer image = images.get(fingerprint);
+        if (image != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return image;
+    }
+
+    /**
+     * Adds a rendered image, the image must not be drawn on afterwards.
+     * Images larger than the whole budget are not cached.
+     *
+     * @param fingerprint The fingerprint of generator and parameters
+     * @param image The finished image
+     */
+    public synchronized void put(String fingerprint, PixelBuffer image) {
+        long bytes = sizeOf(image);
+        if (bytes > budgetBytes) {
+            return;
+        }
+        PixelBuffer replaced = images.put(fingerprint, image);
+        if (replaced != null) {
+            usedBytes -= sizeOf(replaced);
+        }
+        usedBytes += bytes;
+        Iterator<Map.Entry<String, PixelBuffer>> leastRecentlyUsed =
+                images.entrySet().iterator();
+        while (usedBytes > budgetBytes) {
+            usedBytes -= sizeOf(leastRecentlyUsed.next().getValue());
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    /**
+     * Drops all images.
+     */
+    public synchronized void clear() {
+        images.clear();
+        usedBytes = 0;
+    }
+
+    private static long sizeOf(PixelBuffer image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized int getSize() {
+        return images.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders a batch of RenderJobs on all cores: the jobs run on a
+ * work-stealing ForkJoinPool, every job on its own GenModel instance, and
+ * the finished images are written by the ImageOutputService, so that
+ * rendering goes on while the pngs are encoded.
+ *
+ * @author Moritz Rieger
+ */
+public class RenderFarm {
+
+    /**
+     * Gets informed whenever a job is finished (on the thread that rendered
+     * it, so implementations have to be thread-safe).
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param job The finished job
+         * @param model The GenModel that rendered the job
+         * @param done Number of finished jobs so far
+         * @param total Number of all jobs
+         * @param imagesPerSecond Throughput since the start of the batch
+         */
+        void jobFinished(RenderJob job, GenModel model, int done, int total,
+                double imagesPerSecond);
+    }
+
+    private final int threads;
+    private ProgressListener progressListener;
+
+    /**
+     * Creates a RenderFarm that uses all cores.
+     */
+    public RenderFarm() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a RenderFarm.
+     *
+     * @param threads Number of jobs rendered at the same time
+     */
+    public RenderFarm(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A RenderFarm needs at least one thread.");
+        }
+        this.threads = threads;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Renders all jobs and waits until every image is written. A failing job
+     * does not stop the others.
+     *
+     * @param jobs The jobs to render
+     * @param outDir Directory the images are written to
+     * @return The errors of the failed jobs (empty if all succeeded)
+     * @throws InterruptedException If the waiting thread was interrupted, all
+     * jobs that are not finished yet are cancelled then
+     */
+    public List<String> render(List<RenderJob> jobs, File outDir)
+            throws InterruptedException {
+        return render(jobs, outDir, new CancellationToken());
+    }
+
+    /**
+     * Renders all jobs like render(List, File), but stops as soon as the
+     * given token is cancelled: running jobs get a token that depends on it,
+     * jobs that have not started yet are skipped. No image of a cancelled
+     * job is written.
+     *
+     * @param jobs The jobs to render
+     * @param outDir Directory the images are written to
+     * @param cancellationToken E.g. the token of the run that renders a set
+     * @return The errors of the failed jobs (empty if all succeeded or were
+     * cancelled)
+     * @throws InterruptedException If the waiting thread was interrupted, all
+     * jobs that are not finished yet are cancelled then
+     */
+    public List<String> render(List<RenderJob> jobs, File outDir,
+            CancellationToken cancellationToken) throws InterruptedException {
+        // cancelled when render() returns, so no job outlives the batch
+        CancellationToken token = cancellationToken.createChild();
+        ForkJoinPool renderPool = new ForkJoinPool(threads);
+        ImageOutputService output = ImageOutputService.getInstance();
+        Set<String> usedNames = new HashSet<>();
+        AtomicInteger done = new AtomicInteger();
+        AtomicLong pixels = new AtomicLong();
+        long startTime = System.nanoTime();
+
+        List<Future<CompletableFuture<File>>> results = new ArrayList<>();
+        for (RenderJob job : jobs) {
+            results.add(renderPool.submit(() -> {
+                token.throwIfCancelled();
+                GenModel model = job.createModel();
+                model.setCancellationToken(token);
+                CompletableFuture<File> written;
+                if (model instanceof TiledRenderer
+                        && ((TiledRenderer) model).isTiled()) {
+                    // rendered strip by strip right into the file
+                    TiledRenderer renderer = (TiledRenderer) model;
+                    // the name may depend on the started image
+                    renderer.startTiles();
+                    File file = new File(outDir, uniqueName(usedNames,
+                            job.getImageName() != null ? job.getImageName()
+                            : model.getImageName()) + ".png");
+                    new TiledImageWriter().write(renderer, file, token);
+                    written = CompletableFuture.completedFuture(file);
+                    pixels.addAndGet((long) renderer.getImageWidth()
+                            * renderer.getImageHeight());
+                } else {
+                    model.generate();
+                    // the image of a stopped run is not complete
+                    token.throwIfCancelled();
+                    PixelBuffer image = model.getPixelBuffer();
+                    // the model is not used anymore, so its pixels can be
+                    // written without copying them
+                    File file = new File(outDir, uniqueName(usedNames,
+                            job.getImageName() != null ? job.getImageName()
+                            : model.getImageName()) + ".png");
+                    // blocks while the encoders are behind, so finished
+                    // images cannot pile up in memory
+                    written = output.write(image, file);
+                    pixels.addAndGet((long) image.getWidth()
+                            * image.getHeight());
+                }
+                int finished = done.incrementAndGet();
+                if (progressListener != null) {
+                    double seconds = (System.nanoTime() - startTime) / 1e9;
+                    progressListener.jobFinished(job, model, finished,
+                            jobs.size(), finished / seconds);
+                }
+                return written;
+            }));
+        }
+
+        List<String> errors = new ArrayList<>();
+        int cancelled = 0;
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get().get();
+                } catch (ExecutionException ex) {
+                    // unwrap the exceptions of both pools and copies made by
+                    // the ForkJoinPool
+                    Throwable cause = ex;
+                    while (cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    if (cause instanceof CancellationException) {
+                        cancelled++;
+                    } else {
+                        errors.add(jobs.get(i) + ": " + cause.getMessage());
+                    }
+                }
+            }
+        } finally {
+            // running jobs stop at their next check, e.g. after an interrupt
+            token.cancel();
+            renderPool.shutdownNow();
+        }
+        int rendered = jobs.size() - errors.size() - cancelled;
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(String.format("Rendered %d images on %d threads "
+                + "in %.1f s (%.2f images/s, %.1f Mpx/s)%s", rendered, threads,
+                seconds, rendered / seconds, pixels.get() / 1e6 / seconds,
+                cancelled > 0 ? ", " + cancelled + " cancelled" : ""));
+        return errors;
+    }
+
+    // Makes sure that two jobs never write to the same file
+    private static String uniqueName(Set<String> usedNames, String name) {
+        synchronized (usedNames) {
+            String unique = name;
+            for (int i = 2; !usedNames.add(unique); i++) {
+                unique = name + "-" + i;
+            }
+            return unique;
+        }
+    }
+
+}
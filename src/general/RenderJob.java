@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One image to be rendered by the RenderFarm: a generator (by its name in the
+ * GenRegistry), the parameters to set on it and the file name of the image.
+ *
+ * @author Moritz Rieger
+ */
+public class RenderJob {
+
+    private final String generator;
+    private final Map<String, String> parameters;
+    private final String imageName;
+
+    /**
+     * Creates a job.
+     *
+     * @param generator Name of the generator in the GenRegistry
+     * @param parameters Parameters as passed to GenModel.setParameter()
+     * @param imageName File name of the image without .png, or null to let
+     * the GenModel choose one
+     */
+    public RenderJob(String generator, Map<String, String> parameters,
+            String imageName) {
+        this.generator = generator;
+        this.parameters = Collections.unmodifiableMap(
+                new LinkedHashMap<>(parameters));
+        this.imageName = imageName;
+    }
+
+    /**
+     * Creates a job from command line style options, where --generator and
+     * --name are taken as generator and image name and all other options are
+     * parameters.
+     *
+     * @param options Options as parsed by HeadlessRunner.parseOptions()
+     * @return The job
+     */
+    public static RenderJob fromOptions(Map<String, String> options) {
+        Map<String, String> parameters = new LinkedHashMap<>(options);
+        String generator = parameters.remove("generator");
+        if (generator == null) {
+            throw new IllegalArgumentException("--generator is missing in job "
+                    + options + ".");
+        }
+        String imageName = parameters.remove("name");
+        return new RenderJob(generator, parameters, imageName);
+    }
+
+    public String getGenerator() {
+        return generator;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public String getImageName() {
+        return imageName;
+    }
+
+    /**
+     * Creates a new GenModel for this job with all parameters set, so that
+     * jobs never share any state.
+     *
+     * @return A GenModel in headless mode, ready to generate()
+     */
+    public GenModel createModel() {
+        GenModel model = GenRegistry.createModel(generator);
+        if (!model.supportsHeadless()) {
+            throw new IllegalStateException(model.getGenName()
+                    + " draws on a JavaFX Canvas and cannot run headless.");
+        }
+        model.setHeadless(true);
+        // the size limits depend on tiled, so it has to come first
+        String tiled = parameters.get("tiled");
+        if (tiled != null) {
+            model.setParameter("tiled", tiled);
+        }
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (!parameter.getKey().equals("tiled")) {
+                model.setParameter(parameter.getKey(), parameter.getValue());
+            }
+        }
+        return model;
+    }
+
+    @Override
+    public String toString() {
+        return generator + parameters;
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Streams the image of a TiledRenderer into a png file: one strip is
+ * rendered, compressed and appended to the file before the next one is
+ * rendered into the same buffer. Only a single strip is in memory, so a
+ * 40000 x 40000 px image needs no more than a 40000 x 64 px one.
+ *
+ * @author Moritz Rieger
+ */
+public class TiledImageWriter {
+
+    public static final int DEFAULT_STRIP_HEIGHT = 64;
+
+    private final int stripHeight;
+    private final PngEncoder pngEncoder;
+
+    /**
+     * Creates a writer with strips of DEFAULT_STRIP_HEIGHT rows.
+     */
+    public TiledImageWriter() {
+        this(DEFAULT_STRIP_HEIGHT);
+    }
+
+    /**
+     * Creates a writer.
+     *
+     * @param stripHeight Number of rows rendered at once
+     */
+    public TiledImageWriter(int stripHeight) {
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("A strip needs at least one row.");
+        }
+        this.stripHeight = stripHeight;
+        this.pngEncoder = new PngEncoder(Integer.getInteger(
+                ImageOutputService.COMPRESSION_PROPERTY, -1));
+    }
+
+    /**
+     * Renders the image strip by strip into a png file. Blocks until the
+     * whole file is written.
+     *
+     * @param renderer The GenModel that renders the strips, startTiles()
+     * has to be called before
+     * @param file The png file
+     * @throws IOException If the file cannot be written
+     */
+    public void write(TiledRenderer renderer, File file) throws IOException {
+        write(renderer, file, new CancellationToken());
+    }
+
+    /**
+     * Renders the image strip by strip into a png file like
+     * write(TiledRenderer, File), but stops between two strips when the
+     * token gets cancelled. The unfinished file is deleted then.
+     *
+     * @param renderer The GenModel that renders the strips, startTiles()
+     * has to be called before
+     * @param file The png file
+     * @param token Checked before every strip
+     * @throws IOException If the file cannot be written
+     * @throws CancellationException If the token was cancelled
+     */
+    public void write(TiledRenderer renderer, File file,
+            CancellationToken token) throws IOException {
+        try {
+            writeStrips(renderer, file, token);
+        } catch (CancellationException ex) {
+            file.delete();
+            throw ex;
+        }
+    }
+
+    private void writeStrips(TiledRenderer renderer, File file,
+            CancellationToken token) throws IOException {
+        int width = renderer.getImageWidth();
+        int height = renderer.getImageHeight();
+        PixelBuffer strip = new PixelBuffer(width,
+                Math.min(stripHeight, height));
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file), 65536);
+                PngEncoder.StripWriter writer = pngEncoder.start(out, width,
+                        height, renderer.getColors(), false)) {
+            for (int top = 0; top < height; top += stripHeight) {
+                token.throwIfCancelled();
+                int rows = Math.min(stripHeight, height - top);
+                if (rows < strip.getHeight()) {
+                    // the last strip is lower
+                    strip = new PixelBuffer(width, rows);
+                }
+                renderer.renderStrip(strip, top);
+                writer.writeRows(strip);
+            }
+            writer.finish();
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package general;
+
+/**
+ * A GenModel that can render its image in horizontal strips, so that images
+ * far beyond the size of a JavaFX Canvas can be streamed into a file by the
+ * TiledImageWriter without ever holding all pixels in memory.
+ *
+ * @author Moritz Rieger
+ */
+public interface TiledRenderer {
+
+    /**
+     * Largest width and height in tiled mode.
+     */
+    int MAX_TILED_SIZE = 100000;
+
+    /**
+     * In tiled mode the image is only rendered strip by strip, so the size
+     * limits of the GenModel are raised to MAX_TILED_SIZE. Has to be set
+     * before the size.
+     *
+     * @param tiled True to lift the size limits
+     */
+    void setTiled(boolean tiled);
+
+    boolean isTiled();
+
+    int getImageWidth();
+
+    int getImageHeight();
+
+    /**
+     * @return All colors that can occur in the image, or null if they are
+     * not known in advance
+     */
+    int[] getColors();
+
+    /**
+     * Prepares the rendering of a new image, has to be called before the
+     * first strip.
+     */
+    void startTiles();
+
+    /**
+     * Renders the rows top to top + strip.getHeight() - 1 of the image into
+     * the strip. The strips are rendered from top to bottom.
+     *
+     * @param strip A buffer as wide as the image
+     * @param top Row of the image the strip starts with
+     */
+    void renderStrip(PixelBuffer strip, int top);
+
+}
@@ -23,9 +23,9 @@
  */
 package gens.basicexample1;
 
+import general.GenConfig;
 import general.GenModel;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
+import general.PixelBuffer;
 import javafx.scene.paint.Color;
 
 /**
@@ -42,6 +42,23 @@ public class SimpleGenModel extends GenModel {
     private int width; 
     private int height;
     
+    // The parameters of a run are frozen at its start, so the setters can be
+    // called while generate() is running
+    static final class Config extends GenConfig {
+
+        final int width;
+        final int height;
+
+        private Config(SimpleGenModel model) {
+            width = model.width;
+            height = model.height;
+        }
+
+        @Override
+        protected String describe() {
+            return "width=" + width + ",height=" + height;
+        }
+    }
     
     public SimpleGenModel() {
         width = 600;
@@ -74,21 +91,22 @@ public class SimpleGenModel extends GenModel {
  
     @Override
     public void generate() {     
+        // only the config is read from here on
+        Config config = freezeConfig(new Config(this));
+        int width = config.width;
+        int height = config.height;
 
-        setGenState("Creating new canvas...");
-        canvas = new Canvas(width, height);
+        setGenState("Creating new pixel buffer...");
+        pixelBuffer = new PixelBuffer(width, height);
 
         setGenState("Filling image background...");
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        gc.setFill(Color.WHITE);
-        gc.fillRect(0, 0, width, height);
+        pixelBuffer.fill(PixelBuffer.toArgb(Color.WHITE));
 
         setGenState("Drawing blue circle...");
         double diameter = Math.min(width, height);
-        gc.setFill(Color.BLUE);
-        // draw a circle in the middle of the canvas
-        gc.fillOval((width-diameter)/2., (height-diameter)/2.,
-                diameter, diameter);
+        // draw a circle in the middle of the pixel buffer
+        pixelBuffer.fillOval((width-diameter)/2., (height-diameter)/2.,
+                diameter, diameter, PixelBuffer.toArgb(Color.BLUE));
         
         // NOTE1: To show the different middle states (they are usually too fast
         // for the human eye) put the following code snippet before each call
@@ -107,6 +125,10 @@ public class SimpleGenModel extends GenModel {
         // To stop the thread, it must check this status bit regularly and then
         // act on it. This can be done like this:
         // if(Thread.currentThread().isInterrupted()){return;}
+        // The interrupt status gets cleared by every caught
+        // InterruptedException, so inner loops better ask the token of the
+        // run, which also stays cancelled:
+        // if(getCancellationToken().isCancelled()){return;}
      
     }
 }
@@ -24,8 +24,7 @@
 package gens.basicexample2;
 
 import general.GenModel;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
+import general.PixelBuffer;
 import javafx.scene.paint.Color;
 
 /**
@@ -43,14 +42,14 @@ public class SimpleAnimationGenModel extends GenModel {
     public void generate() {
         for (int iteration = 1; iteration <= 500; iteration++) {
             setGenState("Calculating iteration " + iteration + "...");
-            canvas = new Canvas(500, 500);
-            GraphicsContext gc = canvas.getGraphicsContext2D();
-            gc.setFill(Color.WHITE);
-            gc.fillRect(0, 0, 500, 500);
-            gc.setFill(Color.BLUE);
-            gc.fillRect(0, 0, iteration, iteration);
-            waitForCanvasIterationDisplayedInApp();
-            try { // just needed for simulating long lasting task
+            try {
+                // reuses the frames that are not displayed anymore
+                PixelBuffer frame = acquireFrame(500, 500,
+                        PixelBuffer.toArgb(Color.WHITE));
+                frame.fillRect(0, 0, iteration, iteration,
+                        PixelBuffer.toArgb(Color.BLUE));
+                waitForCanvasIterationDisplayedInApp();
+                // just needed for simulating long lasting task
                 Thread.sleep(10);
             } catch (InterruptedException ex) {
                 return;
@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Moritz Rieger.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package gens.ca;
+
+import general.PixelBuffer;
+import java.util.Arrays;
+
+/**
+ * Draws whole rows of cells of a cellular automaton straight into the int[]
+ * of a PixelBuffer instead of one fillRect() or fillOval() per cell. Only the
+ * first pixel row of a row of cells is filled cell by cell (neighbouring
+ * square cells of the same colour with a single Arrays.fill()), the other
+ * pixel rows are copied from it as long as the stamp does not change. Every
+ * pixel of the grid is written, so the frame does not need a background
+ * first.
+ *
+ * The states of the cells are indices into the palette, boolean cells use
+ * palette[0] for false and palette[1] for true. A rasterizer does not change
+ * after its creation and can be used by several threads at once.
+ *
+ * @author Moritz Rieger
+ */
+public final class CellGridRasterizer {
+
+    /**
+     * Shape of a single cell.
+     */
+    public enum Stamp {
+        /** The cell fills its whole square. */
+        SQUARE,
+        /**
+         * The circle inscribed in the square of the cell, the same pixels as
+         * PixelBuffer.fillOval().
+         */
+        CIRCLE
+    }
+
+    private final int cellSize;
+    private final Stamp stamp;
+    private final int[] palette;
+    private final int background; // around circles
+    // pixels of the stamp in each pixel row of a cell are [spanStart, spanEnd)
+    private final int[] spanStart;
+    private final int[] spanEnd;
+
+    /**
+     * @param cellSize Width and height of a cell in px
+     * @param stamp Shape of the cells
+     * @param palette ARGB colour of each state
+     * @param background ARGB colour around circular cells
+     */
+    public CellGridRasterizer(int cellSize, Stamp stamp, int[] palette,
+            int background) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("The cell size has to be at least 1 px.");
+        }
+        if (palette.length == 0) {
+            throw new IllegalArgumentException("The palette needs at least one colour.");
+        }
+        this.cellSize = cellSize;
+        this.stamp = stamp;
+        this.palette = palette.clone();
+        this.background = background;
+        spanStart = new int[cellSize];
+        spanEnd = new int[cellSize];
+        for (int line = 0; line < cellSize; line++) {
+            if (stamp == Stamp.SQUARE) {
+                spanEnd[line] = cellSize;
+            } else {
+                // same rule as PixelBuffer.fillOval(): a pixel belongs to
+                // the circle when its center lies inside
+                double r = cellSize / 2.0;
+                double dy = (line + 0.5 - r) / r;
+                double dx = r * Math.sqrt(1 - dy * dy);
+                int start = Math.max((int) Math.ceil(r - dx - 0.5), 0);
+                int end = Math.min((int) Math.floor(r + dx - 0.5) + 1, cellSize);
+                spanStart[line] = start;
+                spanEnd[line] = Math.max(start, end);
+            }
+        }
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Draws a whole grid of cells, row i at the top i * cellSize. Cells
+     * outside of the target are clipped.
+     *
+     * @param target The PixelBuffer to draw into
+     * @param cells The grid, row by row
+     */
+    public void draw(PixelBuffer target, boolean[][] cells) {
+        for (int i = 0; i < cells.length; i++) {
+            drawRow(target, i, cells[i]);
+        }
+    }
+
+    /**
+     * Draws a whole grid of cells, row i at the top i * cellSize. Cells
+     * outside of the target are clipped.
+     *
+     * @param target The PixelBuffer to draw into
+     * @param states The state of every cell, row by row
+     */
+    public void draw(PixelBuffer target, int[][] states) {
+        for (int i = 0; i < states.length; i++) {
+            drawRow(target, i, states[i]);
+        }
+    }
+
+    /**
+     * Draws a single row of cells, e.g. one generation of a one-dimensional
+     * automaton.
+     *
+     * @param target The PixelBuffer to draw into
+     * @param cellRow Index of the row, its top is cellRow * cellSize
+     * @param cells The cells of the row
+     */
+    public void drawRow(PixelBuffer target, int cellRow, boolean[] cells) {
+        int[] pixels = target.getPixels();
+        int width = target.getWidth();
+        int top = cellRow * cellSize;
+        int lines = Math.min(cellSize, target.getHeight() - top);
+        for (int line = 0; line < lines; line++) {
+            int offset = (top + line) * width;
+            if (line > 0 && sameSpan(line)) {
+                copyLine(pixels, offset - width, offset, cells.length, width);
+            } else {
+                drawLine(pixels, offset, width, cells, line);
+            }
+        }
+    }
+
+    /**
+     * Draws a single row of cells.
+     *
+     * @param target The PixelBuffer to draw into
+     * @param cellRow Index of the row, its top is cellRow * cellSize
+     * @param states The state of every cell of the row
+     */
+    public void drawRow(PixelBuffer target, int cellRow, int[] states) {
+        int[] pixels = target.getPixels();
+        int width = target.getWidth();
+        int top = cellRow * cellSize;
+        int lines = Math.min(cellSize, target.getHeight() - top);
+        for (int line = 0; line < lines; line++) {
+            int offset = (top + line) * width;
+            if (line > 0 && sameSpan(line)) {
+                copyLine(pixels, offset - width, offset, states.length, width);
+            } else {
+                drawLine(pixels, offset, width, states, line);
+            }
+        }
+    }
+
+    /**
+     * Fills one pixel row of a row of cells, e.g. for a strip of a tiled
+     * image that does not start at the top of a cell.
+     *
+     * @param pixels The pixels to write to
+     * @param offset Index of the first pixel of the row in pixels
+     * @param width Number of pixels of the row, cells beyond are clipped
+     * @param cells The cells of the row
+     * @param line Pixel row inside the cells, 0 to cellSize - 1
+     */
+    public void drawLine(int[] pixels, int offset, int width, boolean[] cells,
+            int line) {
+        int limit = offset + Math.min(width, cells.length * cellSize);
+        int off = palette[0];
+        int on = palette[palette.length > 1 ? 1 : 0];
+        if (cellSize == 1) {
+            // both stamps are a single pixel
+            for (int x = offset, j = 0; x < limit; x++, j++) {
+                pixels[x] = cells[j] ? on : off;
+            }
+        } else if (stamp == Stamp.SQUARE) {
+            // runs of cells with the same state are filled at once
+            int j = 0;
+            while (j < cells.length) {
+                boolean state = cells[j];
+                int runEnd = j + 1;
+                while (runEnd < cells.length && cells[runEnd] == state) {
+                    runEnd++;
+                }
+                int from = offset + j * cellSize;
+                if (from >= limit) {
+                    break;
+                }
+                Arrays.fill(pixels, from, Math.min(offset + runEnd * cellSize,
+                        limit), state ? on : off);
+                j = runEnd;
+            }
+        } else {
+            for (int j = 0, x = offset; j < cells.length && x < limit;
+                    j++, x += cellSize) {
+                stampCell(pixels, x, limit, line, cells[j] ? on : off);
+            }
+        }
+    }
+
+    /**
+     * Fills one pixel row of a row of cells.
+     *
+     * @param pixels The pixels to write to
+     * @param offset Index of the first pixel of the row in pixels
+     * @param width Number of pixels of the row, cells beyond are clipped
+     * @param states The state of every cell of the row
+     * @param line Pixel row inside the cells, 0 to cellSize - 1
+     */
+    public void drawLine(int[] pixels, int offset, int width, int[] states,
+            int line) {
+        int limit = offset + Math.min(width, states.length * cellSize);
+        if (cellSize == 1) {
+            for (int x = offset, j = 0; x < limit; x++, j++) {
+                pixels[x] = palette[states[j]];
+            }
+        } else if (stamp == Stamp.SQUARE) {
+            int j = 0;
+            while (j < states.length) {
+                int state = states[j];
+                int runEnd = j + 1;
+                while (runEnd < states.length && states[runEnd] == state) {
+                    runEnd++;
+                }
+                int from = offset + j * cellSize;
+                if (from >= limit) {
+                    break;
+                }
+                Arrays.fill(pixels, from, Math.min(offset + runEnd * cellSize,
+                        limit), palette[state]);
+                j = runEnd;
+            }
+        } else {
+            for (int j = 0, x = offset; j < states.length && x < limit;
+                    j++, x += cellSize) {
+                stampCell(pixels, x, limit, line, palette[states[j]]);
+            }
+        }
+    }
+
+    // One pixel row of a circular cell with the background around it
+    private void stampCell(int[] pixels, int x, int limit, int line,
+            int color) {
+        int start = Math.min(x + spanStart[line], limit);
+        int end = Math.min(x + spanEnd[line], limit);
+        int cellEnd = Math.min(x + cellSize, limit);
+        for (int i = x; i < start; i++) {
+            pixels[i] = background;
+        }
+        for (int i = start; i < end; i++) {
+            pixels[i] = color;
+        }
+        for (int i = end; i < cellEnd; i++) {
+            pixels[i] = background;
+        }
+    }
+
+    // A pixel row looks like the one above if the stamp covers the same part
+    // of the cells (always for squares)
+    private boolean sameSpan(int line) {
+        return spanStart[line] == spanStart[line - 1]
+                && spanEnd[line] == spanEnd[line - 1];
+    }
+
+    private void copyLine(int[] pixels, int from, int to, int numCells,
+            int width) {
+        System.arraycopy(pixels, from, pixels, to,
+                Math.min(width, numCells * cellSize));
+    }
+
+}
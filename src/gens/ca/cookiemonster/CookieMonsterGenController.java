@@ -24,7 +24,6 @@
 package gens.ca.cookiemonster;
 
 import general.GenController;
-import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.fxml.FXML;
@@ -34,7 +33,6 @@ import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import general.GenModel;
-import general.GenState;
 
 /**
  * FXML Controller class
@@ -65,41 +63,11 @@ public class CookieMonsterGenController extends GenController {
         return model;
     }
 
-    @Override
-    public void handleGenerate() {
-        // Lock certain parameter input elements
-        textFieldCells.setEditable(false);
-        textFieldGens.setEditable(false);
-        textFieldStates.setEditable(false);
-        sliderStates.setDisable(true);
-        super.handleGenerate();
-    }
-    
     @Override
     public void initialize() {
         super.initialize();
         model = new CookieMonsterGenModel();
         
-        model.genStateProperty().addListener(new ChangeListener<GenState>() {
-            @Override
-            public void changed(ObservableValue<? extends GenState> observable, GenState oldValue,
-                    GenState newValue) {
-                // As soon as calculations have terminated, parameters can
-                // be modified again
-                Platform.runLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (newValue == GenState.FINISHED_READY) {
-                            textFieldCells.setEditable(true);
-                            textFieldStates.setEditable(true);
-                            sliderStates.setDisable(false);
-                        }
-                    }
-                });
-            }
-
-        });
-
         // display values from model
         textFieldCells.textProperty().setValue(
                 String.valueOf(model.getCells()));
@@ -23,12 +23,20 @@
  */
 package gens.ca.cookiemonster;
 
+import general.FrameScheduler;
+import general.GenConfig;
 import general.GenState;
 import general.GenModel;
-import java.util.Random;
+import general.PixelBuffer;
+import general.RandomSource;
+import gens.ca.CellGridRasterizer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import javafx.application.Platform;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
@@ -52,9 +60,78 @@ public class CookieMonsterGenModel extends GenModel {
 
     private boolean waitForCanvasDisplayedInRootView;
 
-    private int[][] currentGen;
-    
-    private Color[] colors;
+    private int[] colors; // ARGB colour of each state
+
+    // Grids of the generations of a run are reused instead of allocating a
+    // new one per generation. A grid is free again when the compute stage
+    // has calculated the next generation from it and the frame stage has
+    // skipped or drawn it. In native cell mode the grid of a frame is only
+    // free when the frame is not displayed anymore.
+    private static final class PooledGrid {
+
+        private final int[][] cells;
+        private final BlockingQueue<PooledGrid> pool;
+        private final AtomicInteger users = new AtomicInteger();
+
+        private PooledGrid(int numCells, BlockingQueue<PooledGrid> pool) {
+            this.cells = new int[numCells][numCells];
+            this.pool = pool;
+        }
+
+        private void release() {
+            if (users.decrementAndGet() == 0) {
+                pool.add(this);
+            }
+        }
+    }
+
+    // A grid is used by the compute stage and the frame stage at the same
+    // time, the ring buffer holds PIPELINE_CAPACITY more and in native cell
+    // mode the displayed frame keeps one
+    private static BlockingQueue<PooledGrid> createGridPool(int numCells) {
+        int size = PIPELINE_CAPACITY + 4;
+        BlockingQueue<PooledGrid> pool = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            pool.add(new PooledGrid(numCells, pool));
+        }
+        return pool;
+    }
+    // Randomness of the current run (replaced at the start of every run)
+    private RandomSource random = new RandomSource(RandomSource.newSeed());
+
+    // Parameters of one run, frozen at its start
+    static final class Config extends GenConfig {
+
+        final int width;
+        final int height;
+        final int numCells;
+        final int numGens;
+        final int cellSize;
+        final int states;
+        final long step;
+
+        private Config(CookieMonsterGenModel model) {
+            width = model.width;
+            height = model.height;
+            numCells = model.numCells;
+            numGens = model.numGens;
+            cellSize = model.cellSize;
+            states = model.states;
+            step = model.step;
+        }
+
+        @Override
+        protected String describe() {
+            return "cells=" + numCells + ",gens=" + numGens + ",cellSize="
+                    + cellSize + ",states=" + states + ",step=" + step;
+        }
+
+        // the initial generation and the colours are random
+        @Override
+        public String getFingerprint() {
+            return null;
+        }
+    }
 
     public CookieMonsterGenModel() {
         numCells = 120;
@@ -156,35 +233,45 @@ public class CookieMonsterGenModel extends GenModel {
         }
     }
 
-    // Use for random choice of cell state employed in calculating initial generation
-    private int getRandomNumberInRange(int min, int max) {
-        if (min >= max) {
-            throw new IllegalArgumentException("max must be greater than min");
-        }
-        Random r = new Random();
-        return r.nextInt((max - min) + 1) + min;
+    // Calculates the initial generation with a random state for each cell
+    // Every row has its own random stream, so the rows can be filled in
+    // parallel and the result only depends on the seed
+    int[][] calcInitGen(Config config) {
+        return calcInitGen(config, new int[config.numCells][config.numCells]);
     }
 
-    // Calculates the initial generation
-    // Calculation of random initial generation correlates to population density
-    private int[][] calcInitGen() {
-        int[][] nextGen;
-        nextGen = new int[numCells][numCells];
-        for (int i = 0; i < numCells; i++) {
+    // Fills the given grid instead of a new one
+    int[][] calcInitGen(Config config, int[][] nextGen) {
+        final int numCells = config.numCells;
+        IntStream.range(0, numCells).parallel().forEach(i -> {
+            SplittableRandom rnd = random.stream(i);
             for (int j = 0; j < numCells; j++) {
-                nextGen[i][j] = getRandomNumberInRange(0, states - 1);
+                nextGen[i][j] = rnd.nextInt(config.states);
             }
-        }
+        });
         return nextGen;
     }
 
-    // Calculation of next generation of cells
-    private int[][] calcNextGen() {
+    // Snapshot of the current parameters for a run
+    Config createConfig() {
+        return new Config(this);
+    }
+
+    // Calculation of next generation of cells from currentGen, which is
+    // null before the initial generation
+    int[][] calcNextGen(Config config, int[][] currentGen) {
+        return calcNextGen(config, currentGen,
+                new int[config.numCells][config.numCells]);
+    }
+
+    // Writes the next generation into the given grid, which must not be
+    // currentGen
+    int[][] calcNextGen(Config config, int[][] currentGen, int[][] nextGen) {
         if (currentGen == null) {
-            return calcInitGen();
+            return calcInitGen(config, nextGen);
         }
-        int[][] nextGen;
-        nextGen = new int[numCells][numCells];
+        int numCells = config.numCells;
+        int states = config.states;
         for (int i = 0; i < numCells; i++) {
             for (int j = 0; j < numCells; j++) {
                 // Scan neighbourhood
@@ -225,67 +312,127 @@ public class CookieMonsterGenModel extends GenModel {
     }
     
     // Randomly generate colours, one for each state
-    private void initializeColors() {
-        colors = new Color[states];
+    private void initializeColors(Config config) {
+        colors = new int[config.states];
+        SplittableRandom rnd = random.derive("colors").stream(0);
         for (int i = 0; i < colors.length; i++) {
-            double r = Math.random();
-            double g = Math.random();
-            double b = Math.random();
-            colors[i] = Color.color(r, g, b);
+            double r = rnd.nextDouble();
+            double g = rnd.nextDouble();
+            double b = rnd.nextDouble();
+            colors[i] = PixelBuffer.toArgb(Color.color(r, g, b));
+        }
+    }
+
+    // Each cell's colour is determined by its state, the cells are circles
+    // on a white background
+    private static CellGridRasterizer createRasterizer(int cellSize,
+            int[] colors) {
+        return new CellGridRasterizer(cellSize,
+                CellGridRasterizer.Stamp.CIRCLE, colors,
+                PixelBuffer.toArgb(Color.WHITE));
+    }
+
+    // The cells are circles, so enlarging a native cell frame is not
+    // enough. Its grid stays out of the pool while the frame is displayed.
+    private static final class DrawnGrid implements FullSizeSource {
+
+        private final PooledGrid grid;
+        private final CellGridRasterizer rasterizer; // with full cell size
+
+        private DrawnGrid(PooledGrid grid, CellGridRasterizer rasterizer) {
+            this.grid = grid;
+            this.rasterizer = rasterizer;
+        }
+
+        @Override
+        public Supplier<PixelBuffer> capture() {
+            int[][] cells = new int[grid.cells.length][];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = grid.cells[i].clone();
+            }
+            return () -> {
+                int size = cells.length * rasterizer.getCellSize();
+                PixelBuffer image = new PixelBuffer(size, size);
+                rasterizer.draw(image, cells);
+                return image;
+            };
+        }
+
+        @Override
+        public void release() {
+            grid.release();
         }
     }
 
     @Override
     public void generate() {
-        currentGen = null;
-        initializeColors();
+        Config config = freezeConfig(createConfig());
+        random = startRandomSource();
+        BlockingQueue<PooledGrid> gridPool = createGridPool(config.numCells);
+        initializeColors(config);
+        // In native cell mode every cell is a single pixel and the App
+        // enlarges the frames
+        int cellSize = isNativeCells() ? 1 : config.cellSize;
+        setDisplayScale(config.cellSize / cellSize);
+        int size = config.numCells * cellSize;
+        CellGridRasterizer rasterizer = createRasterizer(cellSize, colors);
+        CellGridRasterizer fullSizeRasterizer = cellSize == config.cellSize
+                ? rasterizer : createRasterizer(config.cellSize, colors);
+        long step = config.step;
         try {
-            for (int k = 0; k < numGens; k++) {
-                setGenState("Creating new canvas...");
-                canvas = new Canvas(width, height);
+            // Generation k+1 is calculated on a compute thread while
+            // generation k is drawn and displayed
+            FrameScheduler scheduler = createFrameScheduler(step);
+            // The generations belong to the run, only the compute stage
+            // uses its current one
+            PooledGrid[] currentGrid = {null};
+            generatePipelined(config.numGens, k -> {
+                PooledGrid next = gridPool.take();
+                // used by the frame stage and as source of the next one
+                next.users.set(2);
+                PooledGrid current = currentGrid[0];
+                calcNextGen(config, current != null ? current.cells : null,
+                        next.cells);
+                if (current != null) {
+                    current.release();
+                }
+                currentGrid[0] = next;
+                return next;
+            }, (grid, k) -> {
+                // An overdue generation is not drawn at all (if enabled)
+                if (!scheduler.beginFrame()) {
+                    grid.release();
+                    return;
+                }
+                // Measure time needed for this frame
+                long frameStartTime = System.nanoTime();
 
-                setGenState("Filling image background...");
-                GraphicsContext gc = canvas.getGraphicsContext2D();
-                gc.setFill(Color.WHITE);
-                gc.fillRect(0, 0, width, height);
+                setGenState("Preparing frame...");
+                // every pixel is drawn, no background needed
+                PixelBuffer frame = acquireFrame(size, size);
 
-                // Measure calculation time
-                long calcStartTime = System.nanoTime();
+                setGenState("Drawing generation " + (k + 1) + "...");
                 
-                // Check for interrupt
-                if (Thread.currentThread().isInterrupted()) {
-                    return;
+                // Image is created from previously calculated generation
+                rasterizer.draw(frame, grid.cells);
+                if (rasterizer != fullSizeRasterizer) {
+                    setFullSizeSource(new DrawnGrid(grid, fullSizeRasterizer));
+                } else {
+                    grid.release();
                 }
                 
-                setGenState("Calculating generation " + (k + 1) + "...");
-                currentGen = calcNextGen();
-                
-                // Image is created from previously calculated current generation
-                // Each cell's colour is determined by its state
-                for (int i = 0; i < currentGen.length; i++) {
-                    for (int j = 0; j < currentGen.length; j++) {
-                        int state = currentGen[i][j];
-                        gc.setFill(colors[state]);
-                        gc.fillOval(j * cellSize, i * cellSize, cellSize, cellSize);
-                        }
-                    }
-                
-                long calculationTime = System.nanoTime() - calcStartTime;
+                long calculationTime = System.nanoTime() - frameStartTime;
+                recordFrame(calculationTime, isHeadless() ? 0 : step);
 
-                // Convert to ms
-                calculationTime = calculationTime / 1000000;
+                // Generation is shown at its fixed point in time, which
+                // also accounts for the display of the previous one
+                // (only in the App)
+                scheduler.awaitDeadline();
 
-                // System.out.println(calculationTime);
-                // Generation is delayed according to step length
-                long sleepTime = step - calculationTime;
-                if (sleepTime > 0) {
-                    Thread.sleep(sleepTime);
-                }
-
-                // In case the canvas has not been displayed yet,
+                // In case the frame has not been displayed yet,
                 // generation has to be delayed further
                 waitForCanvasIterationDisplayedInApp();
-            }
+            });
             // Signal controller to enable input
             setGenState(GenState.FINISHED_READY);
         } catch (InterruptedException ex) {
@@ -91,14 +91,10 @@ public class GameOfLifeGenController extends GenController implements HasMouseIn
     
     @Override
     public void handleGenerate() {
-        // Lock certain parameter input elements
+        // The parameters are frozen by the run, but the mouse input sets
+        // the cells the next run starts with, which the run replaces with
+        // its last generation when it ends
         buttonMouseInput.setDisable(true);
-        textFieldCells.setEditable(false);
-        textFieldGens.setEditable(false);
-        textFieldPopDens.setEditable(false);
-        sliderPopDens.setDisable(true);
-        radioButtonFixed.setDisable(true);
-        radioButtonWrapped.setDisable(true);
         super.handleGenerate();
     }
     
@@ -111,19 +107,13 @@ public class GameOfLifeGenController extends GenController implements HasMouseIn
             @Override
             public void changed(ObservableValue<? extends GenState> observable, GenState oldValue,
                     GenState newValue) {
-                // As soon as calculations have terminated, parameters can
-                // be modified again
+                // As soon as calculations have terminated, cells can be
+                // drawn again
                 Platform.runLater(new Runnable() {
                     @Override
                     public void run() {
                         if (newValue == GenState.FINISHED_READY) {
                             buttonMouseInput.setDisable(false);
-                            textFieldCells.setEditable(true);
-                            textFieldGens.setEditable(true);
-                            textFieldPopDens.setEditable(true);
-                            sliderPopDens.setDisable(false);
-                            radioButtonFixed.setDisable(false);
-                            radioButtonWrapped.setDisable(false);
                         }
                     }
                 });
@@ -23,11 +23,16 @@
  */
 package gens.ca.gameoflife1;
 
+import general.FrameScheduler;
+import general.GenConfig;
 import general.GenState;
 import general.GenModel;
+import general.PixelBuffer;
+import general.RandomSource;
+import gens.ca.CellGridRasterizer;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 import javafx.application.Platform;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
@@ -36,6 +41,9 @@ import javafx.scene.paint.Color;
  */
 public class GameOfLifeGenModel extends GenModel {
 
+    private static final int WHITE = PixelBuffer.toArgb(Color.WHITE);
+    private static final int BLACK = PixelBuffer.toArgb(Color.BLACK);
+
     private int width;
     private int height;
 
@@ -51,7 +59,51 @@ public class GameOfLifeGenModel extends GenModel {
 
     private boolean waitForCanvasDisplayedInRootView;
 
-    private boolean[][] currentGen;
+    // Start of the next run if it is not random (drawn with the mouse or
+    // the last generation of the previous run)
+    private volatile boolean[][] initGen;
+    // Randomness of the current run (replaced at the start of every run)
+    private RandomSource random = new RandomSource(RandomSource.newSeed());
+
+    // Parameters of one run, frozen at its start
+    static final class Config extends GenConfig {
+
+        final int width;
+        final int height;
+        final int numCells;
+        final int numGens;
+        final int cellSize;
+        final long step;
+        final boolean randomInit;
+        final boolean edgesWrapped;
+        final double populationDensity;
+
+        private Config(GameOfLifeGenModel model) {
+            width = model.width;
+            height = model.height;
+            numCells = model.numCells;
+            numGens = model.numGens;
+            cellSize = model.cellSize;
+            step = model.step;
+            randomInit = model.randomInit;
+            edgesWrapped = model.edgesWrapped;
+            populationDensity = model.populationDensity;
+        }
+
+        @Override
+        protected String describe() {
+            return "cells=" + numCells + ",gens=" + numGens + ",cellSize="
+                    + cellSize + ",step=" + step + ",randomInit=" + randomInit
+                    + ",edgesWrapped=" + edgesWrapped + ",populationDensity="
+                    + populationDensity;
+        }
+
+        // the initial generation is random or drawn with the mouse
+        @Override
+        public String getFingerprint() {
+            return null;
+        }
+    }
 
     public GameOfLifeGenModel() {
         numCells = 400;
@@ -173,33 +225,41 @@ public class GameOfLifeGenModel extends GenModel {
 
     // Initial generation can be delivered this way
     public void setInitGen(boolean[][] initGen) {
-        this.currentGen = initGen;
+        this.initGen = initGen;
+    }
+
+    // Snapshot of the current parameters for a run
+    Config createConfig() {
+        return new Config(this);
     }
 
     // Calculates the initial generation in case random initial generation is chosen
     // Calculation of random initial generation correlates to population density
-    private boolean[][] calcInitGen() {
+    private boolean[][] calcInitGen(Config config) {
+        int numCells = config.numCells;
         boolean[][] nextGen;
         nextGen = new boolean[numCells][numCells];
-        if (randomInit) {
-            for (int i = 0; i < numCells; i++) {
-                for (int j = 0; j < numCells; j++) {
-                    double rnd = Math.random();
-                    nextGen[i][j] = rnd <= populationDensity;
-                }
+        // Every row has its own random stream, so the rows can be filled
+        // in parallel and the result only depends on the seed
+        final boolean[][] randomGen = nextGen;
+        IntStream.range(0, numCells).parallel().forEach(i -> {
+            SplittableRandom rnd = random.stream(i);
+            for (int j = 0; j < numCells; j++) {
+                randomGen[i][j] = rnd.nextDouble() <= config.populationDensity;
             }
-        } else {
-            nextGen = currentGen;
-        }
+        });
         return nextGen;
     }
 
-    // Calculation of next generation of cells
+    // Calculation of next generation of cells from currentGen, which is
+    // null before the random initial generation
     // Range of index variables depends on choice regarding wrapping of edges
-    private boolean[][] calcNextGen() {
+    boolean[][] calcNextGen(Config config, boolean[][] currentGen) {
         if (currentGen == null) {
-            return calcInitGen();
+            return calcInitGen(config);
         }
+        int numCells = config.numCells;
+        boolean edgesWrapped = config.edgesWrapped;
         boolean[][] nextGen;
         nextGen = new boolean[numCells][numCells];
         int start;
@@ -254,61 +314,63 @@ public class GameOfLifeGenModel extends GenModel {
 
     @Override
     public void generate() {
-        if (randomInit) {
-            currentGen = null;
-        }
+        Config config = freezeConfig(createConfig());
+        random = startRandomSource();
+        // The generations belong to the run, only the compute stage uses
+        // them until the run has ended
+        boolean[][][] currentGen = {config.randomInit ? null : initGen};
+        // In native cell mode every cell is a single pixel and the App
+        // enlarges the frames (square cells look the same)
+        int cellSize = isNativeCells() ? 1 : config.cellSize;
+        setDisplayScale(config.cellSize / cellSize);
+        int size = config.numCells * cellSize;
+        CellGridRasterizer rasterizer = new CellGridRasterizer(cellSize,
+                CellGridRasterizer.Stamp.SQUARE, new int[]{WHITE, BLACK}, WHITE);
+        long step = config.step;
         try {
-            for (int k = 0; k < numGens; k++) {
-                
-                setGenState("Creating new canvas...");
-                canvas = new Canvas(width, height);
-
-                setGenState("Filling image background...");
-                GraphicsContext gc = canvas.getGraphicsContext2D();
-                gc.setFill(Color.WHITE);
-                gc.fillRect(0, 0, width, height);
-                
-                // Check for interrupt
-                if (Thread.currentThread().isInterrupted()) {
+            // Generation k+1 is calculated on a compute thread while
+            // generation k is drawn and displayed
+            FrameScheduler scheduler = createFrameScheduler(step);
+            generatePipelined(config.numGens, k -> {
+                currentGen[0] = calcNextGen(config, currentGen[0]);
+                return currentGen[0];
+            }, (gen, k) -> {
+                // An overdue generation is not drawn at all (if enabled)
+                if (!scheduler.beginFrame()) {
                     return;
                 }
+                // Measure time needed for this frame
+                long frameStartTime = System.nanoTime();
 
-                // Measure calculation time
-                long calcStartTime = System.nanoTime();
-                
-                setGenState("Calculating generation " + (k+1) + "...");
-                currentGen = calcNextGen();
-                
-                // Image is created from previously calculated current generation
-                gc.setFill(Color.BLACK);
-                for (int i = 0; i < currentGen.length; i++) {
-                    for (int j = 0; j < currentGen.length; j++) {
-                        if (currentGen[i][j] == true) {
-                            gc.fillRect(j * cellSize, i * cellSize, cellSize, cellSize);
-                        }
-                    }
-                }
+                setGenState("Preparing frame...");
+                // every pixel is drawn, no background needed
+                PixelBuffer frame = acquireFrame(size, size);
                 
-                long calculationTime = System.nanoTime() - calcStartTime;
+                setGenState("Drawing generation " + (k+1) + "...");
                 
-                // Convert to ms
-                calculationTime = calculationTime / 1000000;
+                // Image is created from previously calculated generation
+                rasterizer.draw(frame, gen);
                 
-                // Generation is delayed according to step length
-                long sleepTime = step - calculationTime;
-                
-                if(sleepTime > 0)
-                    Thread.sleep(sleepTime);
+                long calculationTime = System.nanoTime() - frameStartTime;
+                recordFrame(calculationTime, isHeadless() ? 0 : step);
+
+                // Generation is shown at its fixed point in time, which
+                // also accounts for the display of the previous one
+                // (only in the App)
+                scheduler.awaitDeadline();
 
-                // In case the canvas has not been displayed yet,
+                // In case the frame has not been displayed yet,
                 // generation has to be delayed further
                 waitForCanvasIterationDisplayedInApp();
-            }
+            });
             // Signal controller to enable input
             setGenState(GenState.FINISHED_READY);
         } catch (InterruptedException ex) {
             //setGenState(GenState.FINISHED_READY);
             return; // Generation is stopped if e.g. the generator window is closed
+        } finally {
+            // a run that does not start randomly goes on from here
+            initGen = currentGen[0];
         }
 
     }
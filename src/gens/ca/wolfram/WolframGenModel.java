@@ -23,16 +23,21 @@
  */
 package gens.ca.wolfram;
 
+import general.CancellationToken;
+import general.GenConfig;
 import general.GenModel;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
+import general.PixelBuffer;
+import general.RandomSource;
+import general.TiledRenderer;
+import gens.ca.CellGridRasterizer;
+import java.util.SplittableRandom;
 import javafx.scene.paint.Color;
 
 /**
  *
  * @author sebastian
  */
-public class WolframGenModel extends GenModel {
+public class WolframGenModel extends GenModel implements TiledRenderer {
 
     private int width;
     private int height;
@@ -48,6 +53,57 @@ public class WolframGenModel extends GenModel {
     private boolean edgesWrapped;
     
     private double populationDensity;
+    // Randomness of the current run (replaced by runs with random init)
+    private RandomSource random = new RandomSource(RandomSource.newSeed());
+
+    // in tiled mode the image is streamed to a file and can be much bigger
+    private boolean tiled;
+    private Config tileConfig; // parameters of the tiled run
+    private boolean[] tileRule;
+    private boolean[] tileGen; // generation of the row rendered last
+    private int tileGenIndex;
+    private CellGridRasterizer tileRasterizer; // with the tile cell size
+
+    // Parameters of one run, frozen at its start
+    static final class Config extends GenConfig {
+
+        final int width;
+        final int height;
+        final int numCells;
+        final int numGens;
+        final int ruleNumber;
+        final int cellSize;
+        final boolean randomInit;
+        final boolean edgesWrapped;
+        final double populationDensity;
+
+        private Config(WolframGenModel model) {
+            width = model.width;
+            height = model.height;
+            numCells = model.numCells;
+            numGens = model.numGens;
+            ruleNumber = model.ruleNumber;
+            cellSize = model.cellSize;
+            randomInit = model.randomInit;
+            edgesWrapped = model.edgesWrapped;
+            populationDensity = model.populationDensity;
+        }
+
+        @Override
+        protected String describe() {
+            String parameters = "rule=" + ruleNumber + ",cells=" + numCells
+                    + ",gens=" + numGens + ",cellSize=" + cellSize
+                    + ",edgesWrapped=" + edgesWrapped;
+            return randomInit ? parameters + ",populationDensity="
+                    + populationDensity : parameters;
+        }
+
+        // a random initial generation differs on every run
+        @Override
+        public String getFingerprint() {
+            return randomInit ? null : super.getFingerprint();
+        }
+    }
 
     public WolframGenModel() {
         numCells = 1001;
@@ -120,16 +176,17 @@ public class WolframGenModel extends GenModel {
     
     // Cell size is restricted to certain range
     // Furthermore, cell size is correlated to the number of cells and number of generations
-    // (thus the image does not exceed 8001 px in width or 4000 px in height)
+    // (thus the image does not exceed 8001 px in width or 4000 px in height,
+    // in tiled mode 100000 px in each dimension)
     public void setCellSize(int cellSize) {
         if (cellSize < 1 || cellSize > 50) {
             throw new IllegalArgumentException("Cell Size requires an integer value between 1 and 50.");
         } else {
-            if (cellSize * numGens > 4000) {
-                throw new IllegalArgumentException("The product of cell size and number of generations cannot exceed 4000.");
+            if (cellSize * numGens > getMaxHeight()) {
+                throw new IllegalArgumentException("The product of cell size and number of generations cannot exceed " + getMaxHeight() + ".");
             } else {
-                if(cellSize * numCells > 8001) {
-                    throw new IllegalArgumentException("The product of cell size and number of cells cannot exceed 8001.");
+                if(cellSize * numCells > getMaxWidth()) {
+                    throw new IllegalArgumentException("The product of cell size and number of cells cannot exceed " + getMaxWidth() + ".");
                 } else {
                     this.cellSize = cellSize;
                     width = numCells * cellSize;
@@ -141,12 +198,12 @@ public class WolframGenModel extends GenModel {
     
     // Number of cells per row is restricted to certain range
     // Furthermore, number of cells is correlated to the cell size
-    // (thus the image does not exceed 4000 px in each dimension)
+    // (thus the image does not exceed 8001 px in width)
     public void setCells(int value) {
-        if (value < 1 || value > 8001) {
-            throw new IllegalArgumentException("Cells requires an integer value between 1 and 8001.");
-        } else if (cellSize * value > 8001) {
-            throw new IllegalArgumentException("The product of cell size and number of cells cannot exceed 8001.");
+        if (value < 1 || value > getMaxWidth()) {
+            throw new IllegalArgumentException("Cells requires an integer value between 1 and " + getMaxWidth() + ".");
+        } else if (cellSize * value > getMaxWidth()) {
+            throw new IllegalArgumentException("The product of cell size and number of cells cannot exceed " + getMaxWidth() + ".");
         } else {
             numCells = value;
             width = numCells * cellSize;
@@ -155,16 +212,38 @@ public class WolframGenModel extends GenModel {
     
     // Number of generations is restricted to certain range
     public void setGens(int value) {
-        if (value < 1 || value > 4000) {
-            throw new IllegalArgumentException("Cells requires an integer value between 1 and 4000.");
-        } else if (cellSize * value > 4000) {
-            throw new IllegalArgumentException("The product of cell size and number of generations cannot exceed 4000.");
+        if (value < 1 || value > getMaxHeight()) {
+            throw new IllegalArgumentException("Cells requires an integer value between 1 and " + getMaxHeight() + ".");
+        } else if (cellSize * value > getMaxHeight()) {
+            throw new IllegalArgumentException("The product of cell size and number of generations cannot exceed " + getMaxHeight() + ".");
         } else {
             numGens = value;
             height = numGens * cellSize;
         }
     }
 
+    // A Canvas cannot be larger, strips can
+    private int getMaxWidth() {
+        return tiled ? MAX_TILED_SIZE : 8001;
+    }
+
+    private int getMaxHeight() {
+        return tiled ? MAX_TILED_SIZE : 4000;
+    }
+
+    @Override
+    public void setTiled(boolean tiled) {
+        if (!tiled && (width > 8001 || height > 4000)) {
+            throw new IllegalArgumentException("The image is too large to be rendered without tiles.");
+        }
+        this.tiled = tiled;
+    }
+
+    @Override
+    public boolean isTiled() {
+        return tiled;
+    }
+
     // Set rule according to Wolfram code
     public void setRule(int value) {
         if (value >= 0 && value <= 255) {
@@ -174,10 +253,15 @@ public class WolframGenModel extends GenModel {
         }
     }
 
+    // Snapshot of the current parameters for a run
+    Config createConfig() {
+        return new Config(this);
+    }
+
     // Calculate rule table from decimal Wolfram code integer
-    private boolean[] calcTransitionFunction() {
+    boolean[] calcTransitionFunction(Config config) {
         boolean[] rule = new boolean[8];
-        int ruleAkk = ruleNumber;
+        int ruleAkk = config.ruleNumber;
         // Conversion from decimal integer to binary in array
         // (thus it can serve as a lookup table when calculating next generation)
         for (int i = rule.length - 1; i >= 0; i--) {
@@ -195,13 +279,14 @@ public class WolframGenModel extends GenModel {
     // Calculates the initial generation depending on whether random initial generation
     // or Single 1 has been chosen
     // Calculation of random initial generation correlates to population density
-    private boolean[] calcInitGen() {
+    boolean[] calcInitGen(Config config) {
+        int numCells = config.numCells;
         boolean[] nextGen;
         nextGen = new boolean[numCells];
-        if (randomInit) {
+        if (config.randomInit) {
+            SplittableRandom rnd = random.stream(0);
             for (int i = 0; i < numCells; i++) {
-                double rnd = Math.random();
-                nextGen[i] = rnd <= populationDensity;
+                nextGen[i] = rnd.nextDouble() <= config.populationDensity;
             }
         } else {
             for (int i = 0; i < numCells; i++) {
@@ -219,7 +304,8 @@ public class WolframGenModel extends GenModel {
     // according to the rule selected in the setup process
     // In case of wrapped edges, further calculations are carried out in order
     // to determine the edge cells' next status
-    private boolean[] calcNextGen(boolean[] currentGen, boolean[] rule) {
+    boolean[] calcNextGen(Config config, boolean[] currentGen, boolean[] rule) {
+        int numCells = config.numCells;
         boolean[] nextGen;
         nextGen = new boolean[numCells];
         for (int i = 1; i < numCells - 1; i++) {
@@ -232,7 +318,7 @@ public class WolframGenModel extends GenModel {
                 value += 1;
             nextGen[i] = rule[value];
         }
-        if(edgesWrapped) {
+        if(config.edgesWrapped) {
             int value = 0;
             if (currentGen[numCells-1] == true)
                 value += 4;
@@ -255,38 +341,93 @@ public class WolframGenModel extends GenModel {
 
     @Override
     public void generate() {
+        Config config = freezeConfig(createConfig());
+        if (loadCachedImage()) {
+            return;
+        }
 
-        setGenState("Creating new canvas...");
-        canvas = new Canvas(width, height);
-
-        setGenState("Filling image background...");
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        gc.setFill(Color.WHITE);
-        gc.fillRect(0, 0, width, height);
+        setGenState("Creating new pixel buffer...");
+        pixelBuffer = new PixelBuffer(config.width, config.height);
 
         setGenState("Calculating image...");
         // Calculate initial generation and rule table
-        boolean[] currentGen = calcInitGen();
-        boolean[] rule = calcTransitionFunction();
-        
-        // Output initial generation to image
-        gc.setFill(Color.BLACK);
-        for (int i = 0; i < currentGen.length; i++) {
-            if (currentGen[i] == true) {
-                gc.fillRect(i * cellSize, 0, cellSize, cellSize);
-            }
+        if (config.randomInit) {
+            random = startRandomSource();
         }
+        boolean[] currentGen = calcInitGen(config);
+        boolean[] rule = calcTransitionFunction(config);
+        // every generation fills its whole row of the image, background
+        // included
+        CellGridRasterizer rasterizer = createRasterizer(config.cellSize);
+
+        // Output initial generation to image
+        rasterizer.drawRow(pixelBuffer, 0, currentGen);
 
         // Remaining generations are calculated and written to image one by one
-        for (int i = 1; i < numGens; i++) {
-            currentGen = calcNextGen(currentGen, rule);
-            for (int j = 0; j < currentGen.length; j++) {
-                if (currentGen[j] == true) {
-                    gc.fillRect(j * cellSize, i * cellSize, cellSize, cellSize);
-                }
+        CancellationToken token = getCancellationToken();
+        for (int i = 1; i < config.numGens; i++) {
+            // Stop is checked once per generation
+            if (token.isCancelled()) {
+                return;
             }
+            currentGen = calcNextGen(config, currentGen, rule);
+            rasterizer.drawRow(pixelBuffer, i, currentGen);
+        }
+        cacheImage();
+    }
+
+    private static CellGridRasterizer createRasterizer(int cellSize) {
+        int white = PixelBuffer.toArgb(Color.WHITE);
+        return new CellGridRasterizer(cellSize, CellGridRasterizer.Stamp.SQUARE,
+                new int[]{white, PixelBuffer.toArgb(Color.BLACK)}, white);
+    }
+
+    // the size of the tiled run once it is started
+    @Override
+    public int getImageWidth() {
+        return tileConfig != null ? tileConfig.width : width;
+    }
+
+    @Override
+    public int getImageHeight() {
+        return tileConfig != null ? tileConfig.height : height;
+    }
+
+    @Override
+    public int[] getColors() {
+        return new int[]{PixelBuffer.toArgb(Color.WHITE),
+            PixelBuffer.toArgb(Color.BLACK)};
+    }
+
+    @Override
+    public void startTiles() {
+        tileConfig = freezeConfig(createConfig());
+        tileRule = calcTransitionFunction(tileConfig);
+        if (tileConfig.randomInit) {
+            random = startRandomSource();
         }
+        tileGen = calcInitGen(tileConfig);
+        tileGenIndex = 0;
+        tileRasterizer = createRasterizer(tileConfig.cellSize);
+    }
 
+    // Every row of pixels belongs to one generation, the next generation is
+    // only calculated when the first of its rows is reached
+    @Override
+    public void renderStrip(PixelBuffer strip, int top) {
+        int[] pixels = strip.getPixels();
+        int width = tileConfig.width;
+        int cellSize = tileConfig.cellSize;
+        for (int row = 0; row < strip.getHeight(); row++) {
+            int gen = (top + row) / cellSize;
+            while (tileGenIndex < gen) {
+                tileGen = calcNextGen(tileConfig, tileGen, tileRule);
+                tileGenIndex++;
+            }
+            tileRasterizer.drawLine(pixels, row * width, width, tileGen,
+                    (top + row) % cellSize);
+        }
+        setGenState("Calculating image... " + (top + strip.getHeight()) * 100L / tileConfig.height + " %");
     }
 
 }
@@ -24,7 +24,6 @@
 package gens.ca.wolframevolved;
 
 import general.GenController;
-import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.fxml.FXML;
@@ -37,7 +36,6 @@ import javafx.scene.control.ToggleGroup;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import general.GenModel;
-import general.GenState;
 
 /**
  * FXML Controller class
@@ -71,43 +69,11 @@ public class WolframEvolvedGenController extends GenController {
         return model;
     }
     
-    @Override
-    public void handleGenerate() {
-        // Lock certain parameter input elements
-        textFieldCells.setEditable(false);
-        textFieldGens.setEditable(false);
-        textFieldRows.setEditable(false);
-        radioButtonFixed.setDisable(true);
-        radioButtonWrapped.setDisable(true);
-        super.handleGenerate();
-    }
-    
     @Override
     public void initialize() {
         super.initialize();
         model = new WolframEvolvedGenModel();
         
-        model.genStateProperty().addListener(new ChangeListener<GenState>() {
-            @Override
-            public void changed(ObservableValue<? extends GenState> observable, GenState oldValue,
-                    GenState newValue) {
-                // As soon as calculations have terminated, parameters can
-                // be modified again
-                Platform.runLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (newValue == GenState.FINISHED_READY) {
-                            textFieldCells.setEditable(true);
-                            textFieldGens.setEditable(true);
-                            textFieldRows.setEditable(true);
-                            radioButtonFixed.setDisable(false);
-                            radioButtonWrapped.setDisable(false);
-                        }
-                    }
-                });
-            }
-
-        });
         
         // display values from model
         textFieldCells.textProperty().setValue(
@@ -23,11 +23,15 @@
  */
 package gens.ca.wolframevolved;
 
+import general.FrameScheduler;
+import general.GenConfig;
 import general.GenState;
 import general.GenModel;
-import java.util.Random;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
+import general.PixelBuffer;
+import general.RandomSource;
+import gens.ca.CellGridRasterizer;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
 import javafx.scene.paint.Color;
 
 /**
@@ -43,6 +47,11 @@ import javafx.scene.paint.Color;
 // an impact event occurs.
 public class WolframEvolvedGenModel extends GenModel {
 
+    private static final int CRIMSON = PixelBuffer.toArgb(Color.CRIMSON);
+    private static final int DARKSEAGREEN = PixelBuffer.toArgb(Color.DARKSEAGREEN);
+    private static final int STEELBLUE = PixelBuffer.toArgb(Color.STEELBLUE);
+    private static final int ANTIQUEWHITE = PixelBuffer.toArgb(Color.ANTIQUEWHITE);
+
     private int width;
     private int height;
 
@@ -61,8 +70,72 @@ public class WolframEvolvedGenModel extends GenModel {
 
     private boolean waitForCanvasDisplayedInRootView;
 
-    private boolean[][] currentGolGen;
-    private boolean[][] currentWolfGen;
+    // Randomness of the current run (replaced at the start of every run)
+    private RandomSource random = new RandomSource(RandomSource.newSeed());
+
+    // State of a single generation as handed from compute to frame stage
+    private static class Generation {
+
+        // Game of Life cells before they are hit by the Wolfram structure
+        private final boolean[][] golGen;
+        // impacting Wolfram structure, null if there is no impact event
+        private final boolean[][] wolfGen;
+        // Game of Life cells after the impact, the next generation is
+        // calculated from them
+        private final boolean[][] hitGolGen;
+
+        private Generation(boolean[][] golGen, boolean[][] wolfGen,
+                boolean[][] hitGolGen) {
+            this.golGen = golGen;
+            this.wolfGen = wolfGen;
+            this.hitGolGen = hitGolGen;
+        }
+    }
+
+    // Parameters of one run, frozen at its start
+    static final class Config extends GenConfig {
+
+        final int width;
+        final int height;
+        final int numCells;
+        final int numRows;
+        final int numGens;
+        final int cellSize;
+        final long step;
+        final int impactEventInterval;
+        final boolean randomInit;
+        final boolean edgesWrapped;
+        final double populationDensity;
+
+        private Config(WolframEvolvedGenModel model) {
+            width = model.width;
+            height = model.height;
+            numCells = model.numCells;
+            numRows = model.numRows;
+            numGens = model.numGens;
+            cellSize = model.cellSize;
+            step = model.step;
+            impactEventInterval = model.impactEventInterval;
+            randomInit = model.randomInit;
+            edgesWrapped = model.edgesWrapped;
+            populationDensity = model.populationDensity;
+        }
+
+        @Override
+        protected String describe() {
+            return "cells=" + numCells + ",rows=" + numRows + ",gens="
+                    + numGens + ",cellSize=" + cellSize + ",step=" + step
+                    + ",impactEventInterval=" + impactEventInterval
+                    + ",randomInit=" + randomInit + ",edgesWrapped="
+                    + edgesWrapped + ",populationDensity=" + populationDensity;
+        }
+
+        // the rules of the impact events are random
+        @Override
+        public String getFingerprint() {
+            return null;
+        }
+    }
 
     public WolframEvolvedGenModel() {
         numCells = 121;
@@ -215,9 +288,13 @@ public class WolframEvolvedGenModel extends GenModel {
         }
     }
 
-    // Calculation of next generation of cells by rules of Game of Life
+    // Calculation of next generation of cells by rules of Game of Life from
+    // currentGolGen, which is null before the initial generation
     // Range of index variables depends on choice regarding wrapping of edges
-    private boolean[][] calcNextGen() {
+    private boolean[][] calcNextGen(Config config, boolean[][] currentGolGen) {
+        int numRows = config.numRows;
+        int numCells = config.numCells;
+        boolean edgesWrapped = config.edgesWrapped;
         boolean[][] nextGen;
         nextGen = new boolean[numRows][numCells];
         
@@ -285,6 +362,11 @@ public class WolframEvolvedGenModel extends GenModel {
         return nextGen;
     }
 
+    // Snapshot of the current parameters for a run
+    Config createConfig() {
+        return new Config(this);
+    }
+
     // Set rule according to Wolfram code
     public void setRule(int value) {
         if (value >= 0 && value <= 255) {
@@ -295,7 +377,7 @@ public class WolframEvolvedGenModel extends GenModel {
     }
 
     // Calculate rule table from decimal Wolfram code integer
-    public boolean[] calcTransitionFunction() {
+    public boolean[] calcTransitionFunction(int ruleNumber) {
         boolean[] rule = new boolean[8];
         int ruleAkk = ruleNumber;
         // Conversion from decimal integer to binary in array
@@ -315,13 +397,13 @@ public class WolframEvolvedGenModel extends GenModel {
     // Calculates the Wolfram initial generation depending on whether random initial generation
     // or Single 1 has been chosen
     // Calculation of random initial generation correlates to population density
-    public boolean[] calcInitWolframGen() {
+    boolean[] calcInitWolframGen(Config config, SplittableRandom rnd) {
+        int numCells = config.numCells;
         boolean[] nextGen;
         nextGen = new boolean[numCells];
-        if (randomInit) {
+        if (config.randomInit) {
             for (int i = 0; i < numCells; i++) {
-                double rnd = Math.random();
-                nextGen[i] = rnd <= populationDensity;
+                nextGen[i] = rnd.nextDouble() <= config.populationDensity;
             }
         } else {
             for (int i = 0; i < numCells; i++) {
@@ -339,7 +421,8 @@ public class WolframEvolvedGenModel extends GenModel {
     // according to the rule selected in the setup process
     // In case of wrapped edges, further calculations are carried out in order
     // to determine the edge cells' next status
-    public boolean[] calcNextWolframGen(boolean[] currentGen, boolean[] rule) {
+    boolean[] calcNextWolframGen(Config config, boolean[] currentGen, boolean[] rule) {
+        int numCells = config.numCells;
         boolean[] nextGen;
         nextGen = new boolean[numCells];
         for (int i = 1; i < numCells - 1; i++) {
@@ -355,7 +438,7 @@ public class WolframEvolvedGenModel extends GenModel {
             }
             nextGen[i] = rule[value];
         }
-        if (edgesWrapped) {
+        if (config.edgesWrapped) {
             int value = 0;
             if (currentGen[numCells - 1] == true) {
                 value += 4;
@@ -382,107 +465,161 @@ public class WolframEvolvedGenModel extends GenModel {
         return nextGen;
     }
 
-    // Use for random choice of Wolfram rule employed in calculation
-    private int getRandomNumberInRange(int min, int max) {
-        if (min >= max) {
-            throw new IllegalArgumentException("max must be greater than min");
+    // Calculates generation k including the impact event (if any) from the
+    // previous one (null for the first)
+    // Runs on the compute thread
+    private Generation calcGeneration(Config config, int k,
+            Generation previous) {
+        int numRows = config.numRows;
+        int numCells = config.numCells;
+        boolean[][] golGen = calcNextGen(config,
+                previous != null ? previous.hitGolGen : null);
+        boolean[][] wolfGen = null;
+
+        // In case the time has come for the next impact event,
+        // a Wolfram structure is calculated
+        if (k % config.impactEventInterval == 0) {
+            wolfGen = new boolean[numRows][numCells];
+            // Each impact event has its own random stream, so it does not
+            // depend on the events before
+            SplittableRandom rnd = random.stream(k);
+            int ruleNumber = rnd.nextInt(256);
+            //System.out.println(ruleNumber);
+            boolean[] rule = calcTransitionFunction(ruleNumber);
+            wolfGen[0] = calcInitWolframGen(config, rnd);
+            for (int i = 1; i < numRows; i++) {
+                wolfGen[i] = calcNextWolframGen(config, wolfGen[i - 1], rule);
+            }
+        }
+
+        // Cells hit by impacting Wolfram structure switch their status
+        // (golGen itself is still needed for drawing, so work on a copy)
+        boolean[][] hitGolGen;
+        if (wolfGen != null) {
+            hitGolGen = new boolean[numRows][];
+            for (int i = 0; i < numRows; i++) {
+                hitGolGen[i] = golGen[i].clone();
+                for (int j = 0; j < numCells; j++) {
+                    if (wolfGen[i][j]) {
+                        hitGolGen[i][j] = !hitGolGen[i][j];
+                    }
+                }
+            }
+        } else {
+            hitGolGen = golGen;
+        }
+        return new Generation(golGen, wolfGen, hitGolGen);
+    }
+
+    // Cells are displayed in certain colours
+    // Color key:
+    // RED: Cell is alive and part of currently impacting Wolfram structure
+    // GREEN: Cell is dead and part of currently impacting Wolfram structure
+    // BLUE: Cell is alive and not part of currently impacting Wolfram
+    //       structure or there is no impact event
+    // ANTIQUE WHITE: Cell is dead and not part of currently impacting
+    //                Wolfram structure or there is no impact event
+    // The state of a cell is its index in this palette
+    private static final int[] PALETTE = {ANTIQUEWHITE, STEELBLUE,
+        DARKSEAGREEN, CRIMSON};
+
+    private static CellGridRasterizer createRasterizer(int cellSize) {
+        return new CellGridRasterizer(cellSize,
+                CellGridRasterizer.Stamp.CIRCLE, PALETTE,
+                PixelBuffer.toArgb(Color.WHITE));
+    }
+
+    private static void drawGeneration(PixelBuffer frame, Generation gen,
+            CellGridRasterizer rasterizer) {
+        int[] states = new int[gen.golGen.length > 0 ? gen.golGen[0].length : 0];
+        for (int i = 0; i < gen.golGen.length; i++) {
+            boolean[] golRow = gen.golGen[i];
+            boolean[] wolfRow = gen.wolfGen != null ? gen.wolfGen[i] : null;
+            for (int j = 0; j < golRow.length; j++) {
+                int state = golRow[j] ? 1 : 0;
+                if (wolfRow != null && wolfRow[j]) {
+                    state += 2;
+                }
+                states[j] = state;
+            }
+            rasterizer.drawRow(frame, i, states);
         }
-        Random r = new Random();
-        return r.nextInt((max - min) + 1) + min;
+    }
+
+    // The cells are circles, so enlarging a native cell frame is not
+    // enough. A generation is never changed, so nothing needs to be copied.
+    private static FullSizeSource fullSizeSource(Generation gen,
+            CellGridRasterizer rasterizer) {
+        return new FullSizeSource() {
+            @Override
+            public Supplier<PixelBuffer> capture() {
+                return () -> {
+                    int cellSize = rasterizer.getCellSize();
+                    PixelBuffer image = new PixelBuffer(
+                            gen.golGen[0].length * cellSize,
+                            gen.golGen.length * cellSize);
+                    drawGeneration(image, gen, rasterizer);
+                    return image;
+                };
+            }
+        };
     }
 
     @Override
     public void generate() {
-        currentGolGen = null;
+        Config config = freezeConfig(createConfig());
+        random = startRandomSource();
+        // In native cell mode every cell is a single pixel and the App
+        // enlarges the frames
+        int cellSize = isNativeCells() ? 1 : config.cellSize;
+        setDisplayScale(config.cellSize / cellSize);
+        int frameWidth = config.numCells * cellSize;
+        int frameHeight = config.numRows * cellSize;
+        long step = config.step;
+        CellGridRasterizer rasterizer = createRasterizer(cellSize);
+        CellGridRasterizer fullSizeRasterizer = cellSize == config.cellSize
+                ? rasterizer : createRasterizer(config.cellSize);
         try {
-            for (int k = 0; k < numGens; k++) {
-                setGenState("Creating new canvas...");
-                canvas = new Canvas(width, height);
-
-                setGenState("Filling image background...");
-                GraphicsContext gc = canvas.getGraphicsContext2D();
-                gc.setFill(Color.WHITE);
-                gc.fillRect(0, 0, width, height);
-
-                // Check for interrupt
-                if (Thread.currentThread().isInterrupted()) {
+            // Generation k+1 is calculated on a compute thread while
+            // generation k is drawn and displayed
+            FrameScheduler scheduler = createFrameScheduler(step);
+            // The generations belong to the run, only the compute stage
+            // uses its previous one
+            Generation[] previous = {null};
+            generatePipelined(config.numGens, k -> {
+                previous[0] = calcGeneration(config, k, previous[0]);
+                return previous[0];
+            }, (gen, k) -> {
+                // An overdue generation is not drawn at all (if enabled)
+                if (!scheduler.beginFrame()) {
                     return;
                 }
-                
-                // Measure calculation time
-                long calcStartTime = System.nanoTime();
-
-                setGenState("Calculating generation " + (k + 1) + "...");
-                
-                // Calculate next generation
-                currentGolGen = calcNextGen();
-                
-                currentWolfGen = new boolean[numRows][numCells];
-
-                // In case the time has come for the next impact event,
-                // a Wolfram structure is calculated
-                if (k % impactEventInterval == 0) {
-                    ruleNumber = getRandomNumberInRange(0, 255);
-                    //System.out.println(ruleNumber);
-                    boolean[] rule = calcTransitionFunction();
-                    currentWolfGen[0] = calcInitWolframGen();
-                    for (int i = 1; i < numRows; i++) {
-                        currentWolfGen[i] = calcNextWolframGen(currentWolfGen[i - 1], rule);
-                    }
-                } 
-
-                // Cells are displayed in certain colours
-                // Color key:
-                // RED: Cell is alive and part of currently impacting Wolfram structure
-                // GREEN: Cell is dead and part of currently impacting Wolfram structure
-                // BLUE: Cell is alive and not part of currently impacting Wolfram
-                //       structure or there is no impact event
-                // ANTIQUE WHITE: Cell is dead and not part of currently impacting
-                //                Wolfram structure or there is no impact event
-                for (int i = 0; i < numRows; i++) {
-                    for (int j = 0; j < numCells; j++) {
-                        if (k%impactEventInterval == 0 && currentWolfGen[i][j]) {
-                            if(currentGolGen[i][j])
-                                gc.setFill(Color.CRIMSON);
-                            else
-                                gc.setFill(Color.DARKSEAGREEN);
-                        } else {
-                            if (currentGolGen[i][j]) {
-                                gc.setFill(Color.STEELBLUE);
-                            } else {
-                                gc.setFill(Color.ANTIQUEWHITE);
-                            }
-                        }
-                        gc.fillOval(j * cellSize, i * cellSize, cellSize, cellSize);
-                    }
-                }
-                
-                // Cells hit by impacting Wolfram structure switch their status
-                if (k % impactEventInterval == 0) {
-                    for (int i = 0; i < numRows; i++) {
-                        for (int j = 0; j < numCells; j++) {
-                            if (currentWolfGen[i][j]) {
-                                currentGolGen[i][j] = !currentGolGen[i][j];
-                            }
-                        }
-                    }
-                }
+                // Measure time needed for this frame
+                long frameStartTime = System.nanoTime();
 
-                long calculationTime = System.nanoTime() - calcStartTime;
+                setGenState("Preparing frame...");
+                // every pixel is drawn, no background needed
+                PixelBuffer frame = acquireFrame(frameWidth, frameHeight);
 
-                // Convert to ms
-                calculationTime = calculationTime / 1000000;
+                setGenState("Drawing generation " + (k + 1) + "...");
 
-                // Generation is delayed according to step length
-                long sleepTime = step - calculationTime;
-                if (sleepTime > 0) {
-                    Thread.sleep(sleepTime);
+                drawGeneration(frame, gen, rasterizer);
+                if (rasterizer != fullSizeRasterizer) {
+                    setFullSizeSource(fullSizeSource(gen, fullSizeRasterizer));
                 }
 
-                // In case the canvas has not been displayed yet,
+                long calculationTime = System.nanoTime() - frameStartTime;
+                recordFrame(calculationTime, isHeadless() ? 0 : step);
+
+                // Generation is shown at its fixed point in time, which
+                // also accounts for the display of the previous one
+                // (only in the App)
+                scheduler.awaitDeadline();
+
+                // In case the frame has not been displayed yet,
                 // generation has to be delayed further
                 waitForCanvasIterationDisplayedInApp();
-            }
+            });
             // Signal controller to enable input
             setGenState(GenState.FINISHED_READY);
         } catch (InterruptedException ex) {
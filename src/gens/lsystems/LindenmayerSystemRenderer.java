@@ -23,6 +23,7 @@
  */
 package gens.lsystems;
 
+import general.CancellationToken;
 import java.util.Stack;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.paint.Color;
@@ -41,6 +42,7 @@ public class LindenmayerSystemRenderer {
     private final int width;
     private final int height;
     private final double startAngle;
+    private final CancellationToken token;
 
     private RendererState state;
     private final Stack<RendererState> stateStack = new Stack<>();
@@ -55,6 +57,12 @@ public class LindenmayerSystemRenderer {
     private Canvas canvas;
 
     public LindenmayerSystemRenderer(int width, int height, final String word, final double rotation, final double startAngle) {
+        this(width, height, word, rotation, startAngle, new CancellationToken());
+    }
+
+    // Der Token wird beim Zeichnen geprüft, damit ein Abbruch nicht auf das ganze Wort warten muss
+    public LindenmayerSystemRenderer(int width, int height, final String word, final double rotation, final double startAngle, final CancellationToken token) {
+        this.token = token;
         this.width = width;
         this.height = height;
         this.minY = height;
@@ -128,9 +136,12 @@ public class LindenmayerSystemRenderer {
     }
 
     // Zeichnet das im Konstruktor übergebene Wort auf die Canvas.
-    private void drawCanvas() {
-        for (char character : word.toCharArray()) {
-            switch (character) {
+    void drawCanvas() {
+        for (int i = 0; i < word.length(); i++) {
+            if ((i & 0xFFF) == 0) {
+                token.throwIfCancelled();
+            }
+            switch (word.charAt(i)) {
                 case '+':
                     rotate(rotation);
                     break;
@@ -154,7 +165,7 @@ public class LindenmayerSystemRenderer {
     }
 
     // Erzeugt eine leere, weiße Canvas
-    private void newCanvas() {
+    void newCanvas() {
         canvas = new Canvas(width, height);
         canvas.getGraphicsContext2D().setFill(Color.WHITE);
         canvas.getGraphicsContext2D().fillRect(0, 0, width, height);
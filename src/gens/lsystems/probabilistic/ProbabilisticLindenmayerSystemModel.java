@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 import static java.util.stream.Collectors.toList;
 
 /**
@@ -37,11 +38,19 @@ import static java.util.stream.Collectors.toList;
  */
 public class ProbabilisticLindenmayerSystemModel extends LindenmayerSystemModel {
 
+    // Zufallsstrom des aktuellen Durchlaufs für die Auswahl der Regeln
+    private SplittableRandom ruleRandom = new SplittableRandom();
+
     @Override
     public String getGenName() {
         return "Probabilistic Lindenmayer System";
     }
 
+    @Override
+    public String getRegistryName() {
+        return "plsystem";
+    }
+
     @Override
     // Erzeugt und validiert die Regelmenge für das stochastische L-System
     protected void createRuleset() {
@@ -83,6 +92,10 @@ public class ProbabilisticLindenmayerSystemModel extends LindenmayerSystemModel
 
     // Liefert alle Regeln zurück, die einem Symbol zugewiesen sind.
     private List<Rule> getRulesForCharacter(char character) {
+        return getRulesForCharacter(rules, character);
+    }
+
+    private List<Rule> getRulesForCharacter(List<Rule> rules, char character) {
         return rules.stream()
                 .filter((rule) -> rule.getLeftSide() == character)
                 .collect(toList());
@@ -96,8 +109,8 @@ public class ProbabilisticLindenmayerSystemModel extends LindenmayerSystemModel
 
     @Override
     // Wählt eine Produktionsregel für ein bestimmtes Symbol aus
-    protected Rule getRuleForCharacter(char character) {
-        final List<Rule> rules = getRulesForCharacter(character);
+    protected Rule getRuleForCharacter(List<Rule> ruleset, char character) {
+        final List<Rule> rules = getRulesForCharacter(ruleset, character);
         // Wenn es nur eine deterministische Regel gibt, ist dies klar
         if (rules.size() == 1) {
             return rules.get(0);
@@ -108,10 +121,24 @@ public class ProbabilisticLindenmayerSystemModel extends LindenmayerSystemModel
         return null;
     }
 
+    @Override
+    // Die Auswahl der Regeln ist zufällig
+    protected boolean isDeterministic() {
+        return false;
+    }
+
+    @Override
+    public void generate() {
+        // Jeder Durchlauf zieht seine Regeln aus einem eigenen Zufallsstrom,
+        // mit gesetztem Seed entsteht so immer dasselbe Wort
+        ruleRandom = startRandomSource().stream(0);
+        super.generate();
+    }
+
     // Wählt zufällig anhand der eingegebenen Wahrscheinlichkeitsverteilung eine Regel aus
     private Rule getRandomRule(List<Rule> rules) {
         double state = 0.0;
-        final double random = Math.random();
+        final double random = ruleRandom.nextDouble();
         for (Rule rule : rules) {
             state += ((ProbabilisticRule) rule).getProbability();
             if (state >= random) {
@@ -24,9 +24,12 @@
 package gens.lsystems.standard;
 
 import gens.lsystems.LindenmayerSystemRenderer;
+import general.CancellationToken;
+import general.GenConfig;
 import general.GenModel;
 import gens.lsystems.Rule;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +61,46 @@ public class LindenmayerSystemModel extends GenModel {
 
     protected List<Rule> rules;
 
+    // Die Parameter eines Durchlaufs, zu dessen Beginn eingefroren
+    static final class Config extends GenConfig {
+
+        final int width;
+        final int height;
+        final String axiom;
+        final double rotation;
+        final double startingAngle;
+        final int iterations;
+        final String rulesText;
+        final List<Rule> rules;
+        final boolean deterministic;
+
+        private Config(LindenmayerSystemModel model) {
+            width = model.widthProperty.get();
+            height = model.heightProperty.get();
+            axiom = model.axiomProperty.get();
+            rotation = model.rotationProperty.get();
+            startingAngle = model.startingAngleProperty.get();
+            iterations = model.iterationsProperty.get();
+            rulesText = model.rulesProperty.getValueSafe();
+            rules = Collections.unmodifiableList(new ArrayList<>(model.rules));
+            deterministic = model.isDeterministic();
+        }
+
+        @Override
+        protected String describe() {
+            return "width=" + width + ",height=" + height + ",axiom=" + axiom
+                    + ",rotation=" + rotation + ",startingAngle=" + startingAngle
+                    + ",iterations=" + iterations + ",rules="
+                    + rulesText.replace("\n", ";");
+        }
+
+        // Stochastische Regeln ergeben bei jedem Durchlauf ein anderes Bild
+        @Override
+        public String getFingerprint() {
+            return deterministic ? super.getFingerprint() : null;
+        }
+    }
+
     public IntegerProperty getWidthProperty() {
         return widthProperty;
     }
@@ -127,20 +170,37 @@ public class LindenmayerSystemModel extends GenModel {
         return false;
     }
 
+    // Momentaufnahme der aktuellen Parameter für einen Durchlauf
+    // (die Regelmenge muss mit validate() erzeugt worden sein)
+    Config createConfig() {
+        return new Config(this);
+    }
+
+    // Gibt an, ob dieselben Parameter immer dasselbe Bild ergeben
+    protected boolean isDeterministic() {
+        return true;
+    }
+
     // erzeugt die n-te Generation des eingegebenen L-Systems
-    private String iterateSystem(int generations) {
-        String word = axiomProperty.get();
-        for (int i = 0; i < generations; i++) {
-            word = createNextGeneration(word);
+    private String iterateSystem(Config config) {
+        String word = config.axiom;
+        for (int i = 0; i < config.iterations; i++) {
+            word = createNextGeneration(config.rules, word);
         }
         return word;
     }
 
     // Ersetzt gemäß den eingegebenen Regeln alle Zeichen, die 
-    private String createNextGeneration(final String word) {
+    String createNextGeneration(final List<Rule> rules, final String word) {
         final StringBuilder builder = new StringBuilder();
-        for (char character : word.toCharArray()) {
-            final Rule rule = getRuleForCharacter(character);
+        final CancellationToken token = getCancellationToken();
+        for (int i = 0; i < word.length(); i++) {
+            // Ein Abbruch wird alle 4096 Zeichen geprüft, da die Wörter sehr lang werden können
+            if ((i & 0xFFF) == 0) {
+                token.throwIfCancelled();
+            }
+            final char character = word.charAt(i);
+            final Rule rule = getRuleForCharacter(rules, character);
             if (rule != null) {
                 builder.append(rule.getRightSide());
             } else {
@@ -155,6 +215,17 @@ public class LindenmayerSystemModel extends GenModel {
         return "Standard Lindenmayer System";
     }
 
+    @Override
+    public String getRegistryName() {
+        return "lsystem";
+    }
+
+    @Override
+    // Der Renderer zeichnet auf eine JavaFX Canvas
+    public boolean supportsHeadless() {
+        return false;
+    }
+
     public void validate() {
         createRuleset();
         // Prüft, ob das Axiom nur Buchstaben aus dem Alphabet enthält
@@ -174,13 +245,14 @@ public class LindenmayerSystemModel extends GenModel {
 
     @Override
     public void generate() {
-        final String word = iterateSystem(iterationsProperty.get());
-        this.canvas = new LindenmayerSystemRenderer(widthProperty.get(), heightProperty.get(), word, rotationProperty.get(), startingAngleProperty.get()).render();
+        final Config config = freezeConfig(createConfig());
+        final String word = iterateSystem(config);
+        this.canvas = new LindenmayerSystemRenderer(config.width, config.height, word, config.rotation, config.startingAngle, getCancellationToken()).render();
         waitForCanvasIterationDisplayedInApp();
     }
 
     // Ermittelt die Ersetzungsregel für einen gegebenen Buchstaben
-    protected Rule getRuleForCharacter(char character) {
+    protected Rule getRuleForCharacter(List<Rule> rules, char character) {
         final Optional<Rule> optional = rules.stream()
                 .filter(rule -> rule.getLeftSide() == character)
                 .findFirst();
@@ -40,6 +40,11 @@ public class RandomFunctionTreeExtendedModel extends RandomFunctionTreeModel{
     public String getGenName() {
         return "Extended Random Function Tree Generator";
     }
+
+    @Override
+    public String getRegistryName() {
+        return "rftextended";
+    }
      /**
      * creates recursively a directional Tree in Post-order within the given depth
      * @param depth
@@ -23,24 +23,36 @@
  */
 package gens.rft.standard;
 
+import general.CancellationToken;
+import general.GenConfig;
 import general.GenModel;
+import general.GenRegistry;
+import general.PixelBuffer;
+import general.RenderFarm;
+import general.RenderJob;
+import general.TiledRenderer;
 import gens.rft.Function;
 import gens.rft.FunctionFactory;
-import java.util.Random;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.PixelWriter;
 import javafx.scene.paint.Color;
 
 /**
  *
  * @author Moritz Rieger
  */
-public class RandomFunctionTreeModel extends GenModel {
+public class RandomFunctionTreeModel extends GenModel implements TiledRenderer {
+
+    // largest size without tiles, as for the Wolfram Generator
+    private static final int MAX_SIZE = 8001;
 
     private final IntegerProperty widthProperty = new SimpleIntegerProperty(500);
     private final IntegerProperty heightProperty = new SimpleIntegerProperty(500);
@@ -54,13 +66,63 @@ public class RandomFunctionTreeModel extends GenModel {
     private int depth;
     private boolean createSet = false;
     protected FunctionFactory funcFactory;
-    private Random random;
+    // picks the depth and the seeds of a set, replaced on every run
+    private SplittableRandom random;
+    // in tiled mode the image is streamed to a file and can be much bigger
+    private boolean tiled;
+    private Config tileConfig; // parameters of the tiled run
+    private Function tileRoot;
+
+    /**
+     * The parameters of one run, frozen at its start. The depth is already
+     * chosen between the min and max depth.
+     */
+    protected static final class Config extends GenConfig {
+
+        final int width;
+        final int height;
+        final int seed;
+        final int depth;
+        final int hue;
+        final boolean createSet;
+        // only needed for sets, whose images choose their own depth
+        final int minDepth;
+        final int maxDepth;
+        final int imagesCount;
+
+        private Config(RandomFunctionTreeModel model, int depth) {
+            width = model.widthProperty.get();
+            height = model.heightProperty.get();
+            seed = model.seedProperty.get();
+            this.depth = depth;
+            hue = model.hueProperty.intValue();
+            createSet = model.createSet;
+            minDepth = model.minDepthProperty.intValue();
+            maxDepth = model.maxDepthProperty.intValue();
+            imagesCount = model.imagesCountProperty.get();
+        }
+
+        @Override
+        protected String describe() {
+            return createSet ? "width=" + width + ",height=" + height
+                    + ",minDepth=" + minDepth + ",maxDepth=" + maxDepth
+                    + ",hue=" + hue + ",imagesCount=" + imagesCount
+                    : "width=" + width + ",height=" + height + ",seed=" + seed
+                    + ",depth=" + depth + ",hue=" + hue;
+        }
+
+        // the images of a set are cached by their own models
+        @Override
+        public String getFingerprint() {
+            return createSet ? null : super.getFingerprint();
+        }
+    }
 
     /**
      * Constructor set up new factory for functions
      */
     public RandomFunctionTreeModel() {
-        random = new Random();
+        random = new SplittableRandom();
         funcFactory = new FunctionFactory(seedProperty.getValue());
         setHue();
     }
@@ -70,48 +132,105 @@ public class RandomFunctionTreeModel extends GenModel {
         return "Standard Random Function Tree Generator";
     }
 
+    @Override
+    public String getRegistryName() {
+        return "rft";
+    }
+
     @Override
     public void generate() {
-        canvas = new Canvas(widthProperty.getValue(), heightProperty.getValue());
-        if (createSet) {
-            generateSet();
+        random = startRandomSource().stream(0);
+        Config config = freezeConfig(createConfig());
+        if (config.createSet) {
+            generateSet(config);
         } else {
-            generateImage();
+            generateImage(config);
         }
     }
 
+    /**
+     * the depth is random, so it is chosen when the parameters are frozen
+     *
+     * @return snapshot of the current parameters for a run
+     */
+    protected Config createConfig() {
+        return new Config(this, getDepth());
+    }
+
     /**
      * generate a single image and display it in the general app view
      */
-    public void generateImage() {
+    private void generateImage(Config config) {
         // to generate the same image with the same seed we have to reset the pseudorandom int-stream
-        funcFactory.setSeed(seedProperty.intValue());
+        funcFactory.setSeed(config.seed);
         setHue();
-        Function rootNode = createTree(getDepth());
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        PixelWriter pw = gc.getPixelWriter();
+        if (loadCachedImage()) {
+            return;
+        }
+        int width = config.width;
+        int height = config.height;
+        pixelBuffer = new PixelBuffer(width, height);
+        Function rootNode = createTree(config.depth);
         //loop through every pixel
         int percentage;
-        for (int x = 0; x < widthProperty.getValue(); x++) {
-            percentage = (int) ((double) (x * heightProperty.getValue()) / (double) (widthProperty.getValue() * heightProperty.getValue()) * 100);
-            for (int y = 0; y < heightProperty.getValue(); y++) {
-                double result = evalRFT(rootNode, normalize(x, y));
-                pw.setColor(x, y, getColor(result));
+        int lastPercentage = -1;
+        CancellationToken token = getCancellationToken();
+        for (int x = 0; x < width; x++) {
+            percentage = (int) ((double) (x * height) / (double) (width * height) * 100);
+            for (int y = 0; y < height; y++) {
+                // Stop is checked for every pixel, a deep tree can take
+                // several ms for a single column
+                if (token.isCancelled()) {
+                    return;
+                }
+                double result = evalRFT(rootNode, normalize(config, x, y));
+                pixelBuffer.setPixel(x, y, PixelBuffer.toArgb(getColor(config, result)));
+            }
+            // only publish a new state when the text changes
+            if (percentage != lastPercentage) {
+                setGenState("Calculating Randomized Function Tree Image  " + percentage + " %");
+                lastPercentage = percentage;
             }
-            setGenState("Calculating Randomized Function Tree Image  " + percentage + " %");
         }
+        cacheImage();
     }
 
     /**
      * generate a set of images with different seeds
      * the images are also saved at a specified path
      * (default: home)
+     * every image is rendered by its own model on the RenderFarm, so all cores
+     * are used and the pngs are written while the next images are calculated
      */
-    private void generateSet() {
-        for (int i = 0; i < imagesCountProperty.intValue(); i++) {
-            seedProperty.set(random.nextInt());
-            generateImage();
-            this.saveImage(getImageName());
+    private void generateSet(Config config) {
+        List<RenderJob> jobs = new ArrayList<>();
+        for (int i = 0; i < config.imagesCount; i++) {
+            Map<String, String> parameters = new LinkedHashMap<>();
+            parameters.put("width", Integer.toString(config.width));
+            parameters.put("height", Integer.toString(config.height));
+            parameters.put("minDepth", Integer.toString(config.minDepth));
+            parameters.put("maxDepth", Integer.toString(config.maxDepth));
+            parameters.put("hue", Integer.toString(config.hue));
+            parameters.put("seed", Integer.toString(random.nextInt()));
+            // the depth of every image is reproducible with the set's seed
+            parameters.put("randomSeed", Long.toString(random.nextLong()));
+            jobs.add(new RenderJob(GenRegistry.getName(this), parameters, null));
+        }
+        RenderFarm farm = new RenderFarm();
+        farm.setProgressListener((job, model, done, total, imagesPerSecond) -> {
+            // display the image that was finished last
+            pixelBuffer = model.getPixelBuffer();
+            setGenState(String.format("Rendered %d of %d images (%.1f images/s)",
+                    done, total, imagesPerSecond));
+        });
+        try {
+            // stopping the set stops the images that are being rendered too
+            for (String error : farm.render(jobs, new File(getSavePath()),
+                    getCancellationToken())) {
+                System.out.println(error);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -121,8 +240,13 @@ public class RandomFunctionTreeModel extends GenModel {
      * this is just possible if the functions in the FunctionFactory dont get
      * touched
      */
+    @Override
     protected String getImageName() {
-        return "depth" + depth + "seed" + seedProperty.intValue() + "hue" + hue;
+        Config config = (Config) getConfig();
+        if (config == null) {
+            return "depth" + depth + "seed" + seedProperty.intValue() + "hue" + hue;
+        }
+        return "depth" + config.depth + "seed" + config.seed + "hue" + config.hue;
     }
 
     /**
@@ -132,8 +256,8 @@ public class RandomFunctionTreeModel extends GenModel {
      * @param y
      * @return
      */
-    private double[] normalize(int x, int y) {
-        return new double[]{x / widthProperty.doubleValue(), y / heightProperty.doubleValue()};
+    private double[] normalize(Config config, int x, int y) {
+        return new double[]{x / (double) config.width, y / (double) config.height};
     }
 
     /**
@@ -164,7 +288,7 @@ public class RandomFunctionTreeModel extends GenModel {
      * @param y
      * @return
      */
-    private double evalRFT(Function node, double[] parameter) {
+    double evalRFT(Function node, double[] parameter) {
         if (node.getChildrenCount() > 0) {
             Function[] children = (Function[]) node.getChildren();
             //save results from each children
@@ -187,8 +311,8 @@ public class RandomFunctionTreeModel extends GenModel {
      * @param val
      * @return Color
      */
-    private Color getColor(double val) {
-        return Color.hsb((val * 360 + hue) % 360, val, val);
+    private Color getColor(Config config, double val) {
+        return Color.hsb((val * 360 + config.hue) % 360, val, val);
     }
     
     /**
@@ -235,11 +359,19 @@ public class RandomFunctionTreeModel extends GenModel {
     }
     
     public void setWidth(int width) {
-        widthProperty.set(width);
+        widthProperty.set(checkSize("Width", width));
     }
     
     public void setHeight(int height) {
-        heightProperty.set(height);
+        heightProperty.set(checkSize("Height", height));
+    }
+
+    private int checkSize(String name, int size) {
+        int max = tiled ? MAX_TILED_SIZE : MAX_SIZE;
+        if (size < 1 || size > max) {
+            throw new IllegalArgumentException(name + " requires an integer value between 1 and " + max + ".");
+        }
+        return size;
     }
     
     public void setSeed(int seed) {
@@ -253,4 +385,64 @@ public class RandomFunctionTreeModel extends GenModel {
     public void setCreateSet(boolean createSet) {
         this.createSet = createSet;
     }
+
+    @Override
+    public void setTiled(boolean tiled) {
+        if (!tiled && (widthProperty.get() > MAX_SIZE
+                || heightProperty.get() > MAX_SIZE)) {
+            throw new IllegalArgumentException("The image is too large to be rendered without tiles.");
+        }
+        this.tiled = tiled;
+    }
+
+    @Override
+    public boolean isTiled() {
+        return tiled;
+    }
+
+    // the size of the tiled run once it is started
+    @Override
+    public int getImageWidth() {
+        return tileConfig != null ? tileConfig.width : widthProperty.get();
+    }
+
+    @Override
+    public int getImageHeight() {
+        return tileConfig != null ? tileConfig.height : heightProperty.get();
+    }
+
+    /**
+     * @return null, every value of the tree gets its own color
+     */
+    @Override
+    public int[] getColors() {
+        return null;
+    }
+
+    /**
+     * creates the tree exactly like generateImage(), so a tiled image equals
+     * the one of the app
+     */
+    @Override
+    public void startTiles() {
+        random = startRandomSource().stream(0);
+        tileConfig = freezeConfig(createConfig());
+        funcFactory.setSeed(tileConfig.seed);
+        setHue();
+        tileRoot = createTree(tileConfig.depth);
+    }
+
+    @Override
+    public void renderStrip(PixelBuffer strip, int top) {
+        int width = strip.getWidth();
+        int[] pixels = strip.getPixels();
+        for (int y = 0; y < strip.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                double result = evalRFT(tileRoot, normalize(tileConfig, x, top + y));
+                pixels[y * width + x] = PixelBuffer.toArgb(getColor(tileConfig, result));
+            }
+        }
+        setGenState("Calculating Randomized Function Tree Image  "
+                + (top + strip.getHeight()) * 100L / tileConfig.height + " %");
+    }
 }